@@ -16,23 +16,301 @@
 
 "use strict";
 
+var globToRegex = function (glob) {
+    var regex = "";
+    var i = 0;
+    while (i < glob.length) {
+        var c = glob.charAt(i);
+        if (glob.startsWith("**/", i)) {
+            // zero or more directories
+            regex += "(?:.*/)?";
+            i += 3;
+            continue;
+        }
+        if (glob.startsWith("**", i) && i + 2 == glob.length) {
+            regex += ".*";
+            i += 2;
+            continue;
+        }
+        if (c == "*") {
+            regex += "[^/]*";
+        } else if (c == "?") {
+            regex += "[^/]";
+        } else if (c == "[" && glob.indexOf("]", i + 2) > 0) {
+            var close = glob.indexOf("]", i + 2);
+            var chars = glob.substring(i + 1, close);
+            regex += "[" + (chars.startsWith("!") ? "^" + chars.substring(1) : chars) + "]";
+            i = close;
+        } else if (c == "\\" && i + 1 < glob.length) {
+            i++;
+            regex += "\\" + glob.charAt(i);
+        } else if ("\\.^$|+(){}[]".indexOf(c) >= 0) {
+            regex += "\\" + c;
+        } else {
+            regex += c;
+        }
+        i++;
+    }
+    return regex;
+}
+
+// reads the rules of a .tvdformatignore file in gitignore syntax, returns null if the directory has no such file
+var loadIgnoreRules = function (dir) {
+    var Files = Java.type("java.nio.file.Files");
+    var Pattern = Java.type("java.util.regex.Pattern");
+    var ignoreFile = dir.resolve(".tvdformatignore");
+    if (!Files.isRegularFile(ignoreFile)) {
+        return null;
+    }
+    var rules = [];
+    var lines = Files.readAllLines(ignoreFile);
+    for (var i = 0; i < lines.size(); i++) {
+        var line = lines.get(i).replace(/\s+$/, "");
+        if (line.length == 0 || line.startsWith("#")) {
+            continue;
+        }
+        var rule = {negated : false, dirOnly : false, anchored : false, pattern : null};
+        if (line.startsWith("!")) {
+            rule.negated = true;
+            line = line.substring(1);
+        }
+        if (line.endsWith("/")) {
+            rule.dirOnly = true;
+            line = line.substring(0, line.length - 1);
+        }
+        // a pattern containing a slash is relative to the directory of the ignore file, otherwise it matches names
+        rule.anchored = line.indexOf("/") >= 0;
+        if (line.startsWith("/")) {
+            line = line.substring(1);
+        }
+        if (line.length > 0) {
+            rule.pattern = Pattern.compile(globToRegex(line));
+            rules[rules.length] = rule;
+        }
+    }
+    return rules;
+}
+
+// evaluates the rules of all ignore files from the root to the parent directory of path, the last matching rule wins
+var isIgnored = function (ignoreFiles, path, isDirectory) {
+    var File = Java.type("java.io.File");
+    var name = path.getFileName().toString();
+    var ignored = false;
+    for (var i = 0; i < ignoreFiles.length; i++) {
+        var relativePath = null;
+        var rules = ignoreFiles[i].rules;
+        for (var j = 0; j < rules.length; j++) {
+            if (rules[j].dirOnly && !isDirectory) {
+                continue;
+            }
+            if (rules[j].anchored && relativePath == null) {
+                relativePath = ignoreFiles[i].dir.relativize(path).toString().split(File.separator).join("/");
+            }
+            if (rules[j].pattern.matcher(rules[j].anchored ? relativePath : name).matches()) {
+                ignored = !rules[j].negated;
+            }
+        }
+    }
+    return ignored;
+}
+
+var createExtensionMatcher = function (extensions) {
+    var HashSet = Java.type("java.util.HashSet");
+    var simple = new HashSet();
+    var compound = [];
+    for (var i = 0; i < extensions.length; i++) {
+        if (extensions[i].lastIndexOf(".") == 0) {
+            simple.add(extensions[i]);
+        } else {
+            compound[compound.length] = extensions[i];
+        }
+    }
+    return function(name) {
+        var pos = name.lastIndexOf(".");
+        if (pos >= 0 && simple.contains(name.substring(pos).toLowerCase())) {
+            return true;
+        }
+        return compound.length > 0 && hasExtension(name, compound);
+    }
+}
+
+// walks a directory tree without .git directories and subtrees excluded by .tvdformatignore files
+// calls visit for each file with a matching extension as soon as it is found, returns the sorted files
+var walkFiles = function (rootPath, extensions, visit) {
+    var Files = Java.type("java.nio.file.Files");
+    var Paths = Java.type("java.nio.file.Paths");
+    var ArrayList = Java.type("java.util.ArrayList");
+    var Collections = Java.type("java.util.Collections");
+    var SimpleFileVisitor = Java.type("java.nio.file.SimpleFileVisitor");
+    var FileVisitResult = Java.type("java.nio.file.FileVisitResult");
+    var root = Paths.get(rootPath);
+    var matchesExtension = createExtensionMatcher(extensions);
+    var ignoreFiles = [];
+    var files = new ArrayList();
+    var Visitor = Java.extend(SimpleFileVisitor, {
+        preVisitDirectory : function(dir, attrs) {
+            if (!dir.equals(root) && (dir.getFileName().toString() == ".git" || isIgnored(ignoreFiles, dir, true))) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            var rules = loadIgnoreRules(dir);
+            if (rules != null) {
+                ignoreFiles.push({dir : dir, rules : rules});
+            }
+            return FileVisitResult.CONTINUE;
+        },
+        visitFile : function(file, attrs) {
+            if ((attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(file))
+                    && matchesExtension(file.getFileName().toString()) && !isIgnored(ignoreFiles, file, false)) {
+                files.add(file);
+                if (visit != null) {
+                    visit(file);
+                }
+            }
+            return FileVisitResult.CONTINUE;
+        },
+        postVisitDirectory : function(dir, e) {
+            if (e != null) {
+                throw e;
+            }
+            if (ignoreFiles.length > 0 && ignoreFiles[ignoreFiles.length - 1].dir.equals(dir)) {
+                ignoreFiles.pop();
+            }
+            return FileVisitResult.CONTINUE;
+        }
+    });
+    Files.walkFileTree(root, new Visitor());
+    Collections.sort(files);
+    return files;
+}
+
+// checks a file against the .tvdformatignore files of all directories between rootPath and the file
+var createIgnoreFilter = function (rootPath) {
+    var Paths = Java.type("java.nio.file.Paths");
+    var HashMap = Java.type("java.util.HashMap");
+    var root = Paths.get(rootPath).toRealPath();
+    var cache = new HashMap();
+    var getRules = function(dir) {
+        if (!cache.containsKey(dir)) {
+            cache.put(dir, loadIgnoreRules(dir));
+        }
+        return cache.get(dir);
+    }
+    return function(file) {
+        if (!file.startsWith(root)) {
+            return false;
+        }
+        var ignoreFiles = [];
+        var dir = root;
+        var relativePath = root.relativize(file);
+        for (var i = 0; i < relativePath.getNameCount(); i++) {
+            var rules = getRules(dir);
+            if (rules != null) {
+                ignoreFiles.push({dir : dir, rules : rules});
+            }
+            var path = dir.resolve(relativePath.getName(i));
+            var isDirectory = i < relativePath.getNameCount() - 1;
+            if (isDirectory && path.getFileName().toString() == ".git" || isIgnored(ignoreFiles, path, isDirectory)) {
+                return true;
+            }
+            dir = path;
+        }
+        return false;
+    }
+}
+
 var getFiles = function (rootPath, extensions) {
     var Arrays = Java.type("java.util.Arrays");
     var Paths = Java.type("java.nio.file.Paths");
-    var files;
     if (existsFile(rootPath)) {
-        files = Arrays.asList(Paths.get(rootPath));
-    } else {
-        var Collectors = Java.type("java.util.stream.Collectors");
-        var Files = Java.type("java.nio.file.Files");
-        files = Files.walk(Paths.get(rootPath))
-            .filter(function (f) Files.isRegularFile(f)
-                && Arrays.stream(Java.to(extensions, "java.lang.String[]")).anyMatch(function (e) f.toString().toLowerCase().endsWith(e))
-            )
-            .sorted()
-            .collect(Collectors.toList());
+        return Arrays.asList(Paths.get(rootPath));
     }
-    return files;
+    return walkFiles(rootPath, extensions, null);
+}
+
+var hasExtension = function (file, extensions) {
+    var name = file.toString().toLowerCase();
+    for (var i = 0; i < extensions.length; i++) {
+        if (name.endsWith(extensions[i])) {
+            return true;
+        }
+    }
+    return false;
+}
+
+var readStream = function (inputStream) {
+    var InputStreamReader = Java.type("java.io.InputStreamReader");
+    var StandardCharsets = Java.type("java.nio.charset.StandardCharsets");
+    var StringBuilder = Java.type("java.lang.StringBuilder");
+    var CharArray = Java.type("char[]");
+    var output = new StringBuilder();
+    var reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+    try {
+        var buffer = new CharArray(8192);
+        var n = reader.read(buffer);
+        while (n != -1) {
+            output.append(buffer, 0, n);
+            n = reader.read(buffer);
+        }
+    } finally {
+        reader.close();
+    }
+    return output.toString();
+}
+
+var runGit = function (dir, gitArgs) {
+    var ProcessBuilder = Java.type("java.lang.ProcessBuilder");
+    var FutureTask = Java.type("java.util.concurrent.FutureTask");
+    var Callable = Java.type("java.util.concurrent.Callable");
+    var Thread = Java.type("java.lang.Thread");
+    var processBuilder = new ProcessBuilder(Java.to(["git"].concat(gitArgs), "java.util.List"));
+    processBuilder.directory(dir);
+    var process = processBuilder.start();
+    // stderr is read concurrently to keep warnings out of the output and to avoid blocking git on a full pipe
+    var error = new FutureTask(new Callable(function() readStream(process.getErrorStream())));
+    var errorReader = new Thread(error, "tvdformat-git-stderr");
+    errorReader.setDaemon(true);
+    errorReader.start();
+    var output = readStream(process.getInputStream());
+    return {status : process.waitFor(), output : output, error : error.get()};
+}
+
+var getGitDir = function (rootPath) {
+    var File = Java.type("java.io.File");
+    var root = new File(rootPath);
+    return root.isDirectory() ? root : root.getAbsoluteFile().getParentFile();
+}
+
+// files changed in the working tree compared to the git ref and untracked files, no full directory walk
+var getChangedFiles = function (rootPath, ref, extensions) {
+    var Files = Java.type("java.nio.file.Files");
+    var Paths = Java.type("java.nio.file.Paths");
+    var TreeSet = Java.type("java.util.TreeSet");
+    var ArrayList = Java.type("java.util.ArrayList");
+    var File = Java.type("java.io.File");
+    var dir = getGitDir(rootPath);
+    var pathspec = new File(rootPath).isDirectory() ? "." : new File(rootPath).getName();
+    var topLevel = runGit(dir, ["rev-parse", "--show-toplevel"]);
+    // paths are relative to the top level directory of the working tree, separated by NUL without quoting
+    var changed = runGit(dir, ["diff", "--name-only", "-z", "--diff-filter=d", ref, "--", pathspec]);
+    var untracked = runGit(dir, ["ls-files", "--others", "--exclude-standard", "--full-name", "-z", "--", pathspec]);
+    if (topLevel.status != 0 || changed.status != 0 || untracked.status != 0) {
+        ctx.write("cannot determine files changed since " + ref + ": "
+            + [topLevel, changed, untracked].filter(function(r) r.status != 0)[0].error.trim() + "\n\n");
+        return null;
+    }
+    var topLevelPath = Paths.get(topLevel.output.trim());
+    var ignored = new File(rootPath).isDirectory() ? createIgnoreFilter(rootPath) : function(file) false;
+    var files = new TreeSet();
+    var names = (changed.output + untracked.output).split("\u0000");
+    for (var i = 0; i < names.length; i++) {
+        if (names[i].length > 0) {
+            var file = topLevelPath.resolve(names[i]);
+            if (hasExtension(file, extensions) && Files.isRegularFile(file) && !ignored(file)) {
+                files.add(file);
+            }
+        }
+    }
+    return new ArrayList(files);
 }
 
 var configure = function (formatter, xmlPath, arboriPath) {
@@ -89,6 +367,37 @@ var configure = function (formatter, xmlPath, arboriPath) {
         arboriFileName = new File(arboriPath).getAbsolutePath();
     }
     formatter.options.put(formatter.formatProgramURL, arboriFileName);                                  // default: "default" (= provided by SQLDev / SQLcl)
+    if (!"default".equals(arboriPath)) {
+        checkSpecializedArbori(formatter, arboriFileName);
+    }
+}
+
+// a program specialized by ArboriSpecializer records the folded option values in its header
+var checkSpecializedArbori = function (formatter, arboriFileName) {
+    var Files = Java.type("java.nio.file.Files");
+    var Paths = Java.type("java.nio.file.Paths");
+    var StandardCharsets = Java.type("java.nio.charset.StandardCharsets");
+    var file = Paths.get(arboriFileName);
+    if (!Files.isRegularFile(file)) {
+        return;
+    }
+    var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+    try {
+        if (reader.readLine() != "-- specialized Arbori program, use it with the following option values only") {
+            return;
+        }
+        var line = reader.readLine();
+        while (line != null && line.startsWith("-- :")) {
+            var option = line.substring(4).split(" = ");
+            var value = "" + formatter.getBoolBind(option[0]);
+            if (value != option[1]) {
+                throw "Arbori program specialized for :" + option[0] + " = " + option[1] + ", but the option is " + value + ".";
+            }
+            line = reader.readLine();
+        }
+    } finally {
+        reader.close();
+    }
 }
 
 var getConfiguredFormatter = function (xmlPath, arboriPath) {
@@ -98,34 +407,584 @@ var getConfiguredFormatter = function (xmlPath, arboriPath) {
     return formatter;
 }
 
-var hasParseErrors = function (content, consoleOutput) {
+// idle configured formatters by settings version, kept while the tvdformat command is registered
+var idleFormatters = new (Java.type("java.util.concurrent.ConcurrentHashMap"))();
+var maxIdleFormatters = Math.max(Java.type("java.lang.Runtime").getRuntime().availableProcessors(), 2);
+
+var getFormatterKey = function (xmlPath, arboriPath) {
+    var getVersion = function (path) {
+        if (path == null || "default".equals(path) || "embedded".equals(path)) {
+            return "" + path;
+        }
+        var File = Java.type("java.io.File");
+        var f = new File(path);
+        return f.getAbsolutePath() + ":" + f.lastModified() + ":" + getFileHash(f.toPath());
+    }
+    return getVersion(xmlPath) + "|" + getVersion(arboriPath);
+}
+
+var acquireFormatter = function (xmlPath, arboriPath, key) {
+    // formatters of other settings versions are not reused anymore
+    idleFormatters.keySet().removeIf(function(k) !k.equals(key));
+    var idle = idleFormatters.get(key);
+    var formatter = idle == null ? null : idle.pollFirst();
+    if (formatter == null) {
+        // the Arbori program is compiled on first use of a new formatter
+        formatter = getConfiguredFormatter(xmlPath, arboriPath);
+    }
+    return formatter;
+}
+
+var releaseFormatter = function (formatter, key) {
+    var ConcurrentLinkedDeque = Java.type("java.util.concurrent.ConcurrentLinkedDeque");
+    var idle = idleFormatters.computeIfAbsent(key, function(k) new ConcurrentLinkedDeque());
+    // idle formatters of a single settings version only, limited like in FormatterPool
+    if (idle.size() < maxIdleFormatters) {
+        idle.offerFirst(formatter);
+    }
+}
+
+var parse = function (content) {
     var Lexer = Java.type("oracle.dbtools.parser.Lexer");
     var Parsed = Java.type("oracle.dbtools.parser.Parsed");
     var SqlEarley = Java.type("oracle.dbtools.parser.plsql.SqlEarley")
-    var newContent = "\n" + content; // ensure correct line number in case of an error
-    var tokens = Lexer.parse(newContent);
-    var parsed = new Parsed(newContent, tokens, SqlEarley.getInstance(), Java.to(["sql_statements"], "java.lang.String[]"));
+    var tokens = Lexer.parse(content);
+    return new Parsed(content, tokens, SqlEarley.getInstance(), Java.to(["sql_statements"], "java.lang.String[]"));
+}
+
+var formatContent = function (content, formatter, withErrorMessage) {
+    // the parse result is used for the syntax check and formatting
+    var parsed = parse(content);
     var syntaxError = parsed.getSyntaxError();
     if (syntaxError != null && syntaxError.getMessage() != null) {
-        if (consoleOutput) {
-            ctx.write(syntaxError.getDetailedMessage());
-            ctx.write("... ");
+        var syntaxErrorMessage = null;
+        if (withErrorMessage) {
+            // parsed again with a leading line break to get the correct line number in the message
+            syntaxErrorMessage = parse("\n" + content).getSyntaxError().getDetailedMessage() + "... ";
         }
-        return true;
-    } 
-    return false;
+        return {formatted : null, syntaxError : true, syntaxErrorMessage : syntaxErrorMessage};
+    }
+    return {formatted : formatter.format(parsed), syntaxError : false, syntaxErrorMessage : null};
+}
+
+var readSourceFile = function (file, charset) {
+    var Files = Java.type("java.nio.file.Files");
+    var String = Java.type("java.lang.String");
+    var StringBuilder = Java.type("java.lang.StringBuilder");
+    var InputStreamReader = Java.type("java.io.InputStreamReader");
+    var MessageDigest = Java.type("java.security.MessageDigest");
+    var DigestInputStream = Java.type("java.security.DigestInputStream");
+    var CodingErrorAction = Java.type("java.nio.charset.CodingErrorAction");
+    var CharArray = Java.type("char[]");
+    var CharBuffer = Java.type("java.nio.CharBuffer");
+    var Pattern = Java.type("java.util.regex.Pattern");
+    var lfPattern = Pattern.compile("\n");
+    var crlfPattern = Pattern.compile("\r\n");
+    var digest = MessageDigest.getInstance("SHA-256");
+    // fail on bytes not valid in the charset instead of writing back replacement characters
+    var decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    var reader = new InputStreamReader(new DigestInputStream(Files.newInputStream(file), digest), decoder);
+    // the number of bytes is an upper bound for the number of chars in single and multi-byte charsets
+    var content = new StringBuilder(Math.min(Files.size(file), 2147483639) | 0);
+    // chars are decoded into one buffer and appended to the content without intermediate strings
+    var buffer = new CharArray(65536);
+    var bom = false;
+    var lineSeparator = null;
+    var pendingCr = false;
+    try {
+        var n = reader.read(buffer);
+        while (n != -1) {
+            var start = 0;
+            if (content.length() == 0 && !bom && !pendingCr && n > 0 && buffer[0] == "\uFEFF") {
+                bom = true;
+                start = 1;
+            }
+            if (lineSeparator == null) {
+                var lf = lfPattern.matcher(CharBuffer.wrap(buffer, start, n - start));
+                if (lf.find()) {
+                    // the first line ending determines the line endings of the formatted file
+                    var pos = start + lf.start();
+                    lineSeparator = (pos > start ? buffer[pos - 1] == "\r" : pendingCr) ? "\r\n" : "\n";
+                }
+            }
+            if (lineSeparator == "\n") {
+                if (pendingCr) {
+                    content.append("\r");
+                    pendingCr = false;
+                }
+                content.append(buffer, start, n - start);
+            } else {
+                if (pendingCr) {
+                    // a CR at the end of the previous buffer might be the first half of a CRLF
+                    content.append(n > start && buffer[start] == "\n" ? "" : "\r");
+                    pendingCr = false;
+                }
+                var end = n;
+                if (end > start && buffer[end - 1] == "\r") {
+                    pendingCr = true;
+                    end--;
+                }
+                // the formatter works with LF only
+                var crlf = crlfPattern.matcher(CharBuffer.wrap(buffer, start, end - start));
+                var pos = 0;
+                while (crlf.find()) {
+                    content.append(buffer, start + pos, crlf.start() - pos);
+                    pos = crlf.start() + 1;
+                }
+                content.append(buffer, start + pos, end - start - pos);
+            }
+            n = reader.read(buffer);
+        }
+        if (pendingCr) {
+            content.append("\r");
+        }
+    } finally {
+        reader.close();
+    }
+    return {
+        content : content.toString(),
+        charset : charset,
+        bom : bom,
+        lineSeparator : lineSeparator == null ? "\n" : lineSeparator,
+        hash : toHex(digest.digest())
+    };
+}
+
+var writeText = function (writer, text, start, end, lineSeparator) {
+    if (lineSeparator == "\n") {
+        writer.write(text, start, end - start);
+    } else {
+        var pos = start;
+        while (pos < end) {
+            var lf = text.indexOf("\n", pos);
+            if (lf < 0 || lf >= end) {
+                writer.write(text, pos, end - pos);
+                pos = end;
+            } else {
+                writer.write(text, pos, lf - pos);
+                writer.write(lineSeparator);
+                pos = lf + 1;
+            }
+        }
+    }
 }
 
-var readFile = function (file) {
+var replaceFile = function (temp, target) {
     var Files = Java.type("java.nio.file.Files");
+    var StandardCopyOption = Java.type("java.nio.file.StandardCopyOption");
+    var AtomicMoveNotSupportedException = Java.type("java.nio.file.AtomicMoveNotSupportedException");
+    try {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (e) {
+        if (e instanceof AtomicMoveNotSupportedException) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            throw e;
+        }
+    }
+}
+
+// writes a file via a temporary file in the same directory, an interrupted run never leaves a partially written file
+var writeSourceFile = function (file, source, writeContent) {
+    var Files = Java.type("java.nio.file.Files");
+    var MessageDigest = Java.type("java.security.MessageDigest");
+    var DigestOutputStream = Java.type("java.security.DigestOutputStream");
+    var OutputStreamWriter = Java.type("java.io.OutputStreamWriter");
+    var BufferedWriter = Java.type("java.io.BufferedWriter");
+    var target = file.toRealPath();
+    var temp = Files.createTempFile(target.getParent(), "." + target.getFileName().toString(), ".tmp");
+    var digest = MessageDigest.getInstance("SHA-256");
+    try {
+        if (target.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+        }
+        var writer = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(Files.newOutputStream(temp), digest), source.charset));
+        try {
+            if (source.bom) {
+                writer.write("\uFEFF");
+            }
+            writeContent(writer);
+        } finally {
+            writer.close();
+        }
+        replaceFile(temp, target);
+    } catch (e) {
+        Files.deleteIfExists(temp);
+        throw e;
+    }
+    return toHex(digest.digest());
+}
+
+var writeFile = function (file, source, content) {
+    return writeSourceFile(file, source, function(writer) {
+        writeText(writer, content, 0, content.length, source.lineSeparator);
+    });
+}
+
+var toHex = function (digest) {
+    var BigInteger = Java.type("java.math.BigInteger");
     var String = Java.type("java.lang.String");
-    var content = new String(Files.readAllBytes(file));
-    return content;
+    return String.format("%064x", new BigInteger(1, digest));
+}
+
+var getHash = function (content) {
+    var MessageDigest = Java.type("java.security.MessageDigest");
+    var StandardCharsets = Java.type("java.nio.charset.StandardCharsets");
+    return toHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+}
+
+var getFileHash = function (file) {
+    var MessageDigest = Java.type("java.security.MessageDigest");
+    var Files = Java.type("java.nio.file.Files");
+    // raw bytes, independent of the platform charset
+    return toHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file)));
+}
+
+var getJavaActionsVersion = function () {
+    var System = Java.type("java.lang.System");
+    if ("false".equals(System.getProperty("tvdformat.javaActions", "true"))) {
+        return "disabled";
+    }
+    try {
+        var Actions = Java.type("com.trivadis.plsql.formatter.arbori.Actions");
+        return "enabled:" + Actions.class.getPackage().getImplementationVersion();
+    } catch (e) {
+        // not on the classpath, the Arbori program uses the JavaScript implementation
+        return "not available";
+    }
+}
+
+var getSettingsFingerprint = function (formatter, charset) {
+    var Format = Java.type("oracle.dbtools.app.Format");
+    var TreeMap = Java.type("java.util.TreeMap");
+    var Paths = Java.type("java.nio.file.Paths");
+    // effective options in a stable order
+    var options = new TreeMap();
+    var keySet = formatter.options.keySet().toArray();
+    for (var i in keySet) {
+        options.put(keySet[i].toString(), "" + formatter.options.get(keySet[i]));
+    }
+    var settings = options.toString() + "\n";
+    // cache entries are based on file bytes
+    settings += charset.name() + "\n";
+    // the formatter version covers the default Arbori program and the included std.arbori
+    settings += Format.class.getPackage().getImplementationVersion() + "\n";
+    // the Java and the JavaScript implementation of the Arbori callbacks are not guaranteed to be identical
+    settings += getJavaActionsVersion() + "\n";
+    var arboriFileName = formatter.options.get(formatter.formatProgramURL);
+    if (!"default".equals(arboriFileName)) {
+        settings += getFileHash(Paths.get(arboriFileName));
+    }
+    return getHash(settings);
+}
+
+var loadCache = function (cachePath, fingerprint) {
+    var Properties = Java.type("java.util.Properties");
+    var FileInputStream = Java.type("java.io.FileInputStream");
+    var entries = new Properties();
+    if (existsFile(cachePath)) {
+        var input = new FileInputStream(cachePath);
+        try {
+            entries.load(input);
+        } finally {
+            input.close();
+        }
+        if (!fingerprint.equals(entries.getProperty("settings"))) {
+            // settings changed, all entries are invalid
+            entries.clear();
+        }
+    }
+    // only entries used in this run are saved, entries of deleted or changed files are dropped
+    var usedEntries = new Properties();
+    usedEntries.setProperty("settings", fingerprint);
+    return {path : cachePath, entries : entries, usedEntries : usedEntries};
+}
+
+var getCacheEntry = function (cache, hash) {
+    var entry = cache.entries.getProperty(hash);
+    if (entry != null) {
+        cache.usedEntries.setProperty(hash, entry);
+    }
+    return entry;
+}
+
+var putCacheEntry = function (cache, hash, entry) {
+    cache.entries.setProperty(hash, entry);
+    cache.usedEntries.setProperty(hash, entry);
+}
+
+var saveCache = function (cache) {
+    var Files = Java.type("java.nio.file.Files");
+    var Paths = Java.type("java.nio.file.Paths");
+    var FileOutputStream = Java.type("java.io.FileOutputStream");
+    var target = Paths.get(cache.path).toAbsolutePath();
+    var temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    var output = new FileOutputStream(temp.toFile());
+    try {
+        cache.usedEntries.store(output, "tvdformat cache: SHA-256 of formatted file or syntax error message by SHA-256 of file");
+    } finally {
+        output.close();
+    }
+    replaceFile(temp, target);
+}
+
+// profile events recorded by the instrumented Arbori program: [kind, rule, nanoTime, allocated bytes, counting]
+var profileEventsOption = "tvdformat.profile.events";
+
+var profilePrelude = 'tvdformat_profile_prelude: runOnce -> {\n'
+    + '  var profileEvents = struct.options.get("' + profileEventsOption + '");\n'
+    + '  var profileThreads = java.lang.management.ManagementFactory.getThreadMXBean();\n'
+    + '  var profileEvent = function(kind, rule, counted) {\n'
+    + '    if (profileEvents != null) {\n'
+    + '      var bytes = profileThreads.getThreadAllocatedBytes(java.lang.Thread.currentThread().getId());\n'
+    + '      profileEvents.add(Java.to([kind, rule, java.lang.System.nanoTime(), bytes, counted], "java.lang.Object[]"));\n'
+    + '    }\n'
+    + '  }\n'
+    + '}\n\n';
+
+// adds runOnce rules recording an event before and after every named rule
+var instrumentArbori = function(program) {
+    try {
+        // ArboriProfiler of the tests project when on the classpath, same as the Java implementation of the Arbori callbacks
+        var ArboriProfiler = Java.type("com.trivadis.plsql.formatter.ArboriProfiler");
+        return "" + ArboriProfiler.instrument(program);
+    } catch (e) {
+        if (e instanceof Java.type("java.lang.IllegalArgumentException")) {
+            throw e.getMessage();
+        }
+        // not on the classpath, e.g. in SQLcl
+        return instrumentArboriScript(program);
+    }
+}
+
+// JavaScript implementation of ArboriProfiler.instrument, changes must be applied to both
+var instrumentArboriScript = function(program) {
+    var nl = program.indexOf("\r\n") >= 0 ? "\r\n" : "\n";
+    var at = function(i, s) {
+        return program.substring(i, i + s.length) == s;
+    }
+    var unexpected = function(pos) {
+        return "unexpected Arbori syntax at line " + program.substring(0, pos).split("\n").length + ".";
+    }
+    var skipTrivia = function(pos) {
+        var i = pos;
+        while (i < program.length) {
+            if (/\s/.test(program.charAt(i))) {
+                i++;
+            } else if (at(i, "--")) {
+                var eol = program.indexOf("\n", i);
+                i = eol < 0 ? program.length : eol + 1;
+            } else if (at(i, "/*")) {
+                var end = program.indexOf("*/", i + 2);
+                i = end < 0 ? program.length : end + 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+    var skipQuoted = function(pos) {
+        var quote = program.charAt(pos);
+        if (quote != '"' && quote != "'") {
+            throw unexpected(pos);
+        }
+        for (var i = pos + 1; i < program.length; i++) {
+            if (program.charAt(i) == quote) {
+                if (program.charAt(i + 1) != quote) {
+                    return i + 1;
+                }
+                i++;
+            }
+        }
+        throw unexpected(pos);
+    }
+    var scanName = function(pos) {
+        if (program.charAt(pos) == '"') {
+            return skipQuoted(pos);
+        }
+        var i = pos;
+        while (i < program.length && /[\w$#]/.test(program.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+    var skipJavaScriptBlock = function(pos) {
+        var depth = 0;
+        for (var i = pos; i < program.length; i++) {
+            var c = program.charAt(i);
+            if (c == "{") {
+                depth++;
+            } else if (c == "}") {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            } else if (c == '"' || c == "'") {
+                i++;
+                while (i < program.length && program.charAt(i) != c && program.charAt(i) != "\n") {
+                    i += program.charAt(i) == "\\" ? 2 : 1;
+                }
+            } else if (at(i, "//")) {
+                var eol = program.indexOf("\n", i);
+                i = (eol < 0 ? program.length : eol) - 1;
+            } else if (at(i, "/*")) {
+                var end = program.indexOf("*/", i + 2);
+                i = end < 0 ? program.length : end + 1;
+            }
+        }
+        throw unexpected(pos);
+    }
+    var result = [];
+    var pos = 0;
+    var ruleNo = 0;
+    while (true) {
+        var ruleStart = skipTrivia(pos);
+        if (ruleStart >= program.length) {
+            result.push(program.substring(pos));
+            break;
+        }
+        if (at(ruleStart, "include")) {
+            var includeEnd = skipQuoted(skipTrivia(ruleStart + "include".length));
+            result.push(program.substring(pos, includeEnd));
+            pos = includeEnd;
+            continue;
+        }
+        var nameEnd = scanName(ruleStart);
+        var colon = skipTrivia(nameEnd);
+        if (nameEnd == ruleStart || program.charAt(colon) != ":") {
+            throw unexpected(ruleStart);
+        }
+        var name = program.substring(ruleStart, nameEnd);
+        var rule = JSON.stringify(name.charAt(0) == '"' ? name.substring(1, name.length - 1) : name);
+        var i = colon + 1;
+        var bodyStart = -1;
+        var end = -1;
+        while (end < 0) {
+            i = skipTrivia(i);
+            if (i >= program.length) {
+                throw unexpected(ruleStart);
+            }
+            var c = program.charAt(i);
+            if (c == "'" || c == '"') {
+                i = skipQuoted(i);
+            } else if (c == ";") {
+                end = i + 1;
+            } else if (at(i, "->")) {
+                i = skipTrivia(i + 2);
+                if (program.charAt(i) == ";") {
+                    end = i + 1;
+                } else if (program.charAt(i) == "{") {
+                    bodyStart = i;
+                    end = skipJavaScriptBlock(i);
+                } else {
+                    throw unexpected(i);
+                }
+            } else {
+                i++;
+            }
+        }
+        var counting = bodyStart >= 0 ? "callback" : name.charAt(0) == '"' ? "none" : "tuple";
+        var prefix = "tvdformat_profile_" + ruleNo;
+        result.push(program.substring(pos, ruleStart));
+        if (ruleNo == 0) {
+            result.push(profilePrelude.split("\n").join(nl));
+        }
+        result.push(prefix + '_start: runOnce -> { profileEvent("start", ' + rule + ', "' + counting + '"); }' + nl);
+        if (bodyStart >= 0) {
+            result.push(program.substring(ruleStart, bodyStart + 1) + ' profileEvent("enter", ' + rule + ');' + nl);
+            result.push(program.substring(bodyStart + 1, end - 1));
+            result.push(nl + '  profileEvent("exit", ' + rule + ');' + nl + '}');
+        } else {
+            result.push(program.substring(ruleStart, end));
+        }
+        result.push(nl + prefix + '_end: runOnce -> { profileEvent("end", ' + rule + '); }');
+        if (counting == "tuple") {
+            result.push(nl + prefix + '_tuples: ' + name + ' -> { profileEvent("tuple", ' + rule + '); }');
+        }
+        pos = end;
+        ruleNo++;
+    }
+    return result.join("");
 }
 
-var writeFile = function (file, content) {
+var createProfile = function(arboriPath, profilePath) {
     var Files = Java.type("java.nio.file.Files");
-    Files.write(file, content.getBytes());
+    var Paths = Java.type("java.nio.file.Paths");
+    var StandardCharsets = Java.type("java.nio.charset.StandardCharsets");
+    var String = Java.type("java.lang.String");
+    var instrumented = instrumentArbori(new String(Files.readAllBytes(Paths.get(arboriPath)), StandardCharsets.UTF_8));
+    var program = Files.createTempFile("tvdformat-profile-", ".arbori");
+    Files.write(program, instrumented.getBytes(StandardCharsets.UTF_8));
+    return {path : profilePath, arboriPath : program.toString(), rules : []};
+}
+
+var startProfile = function(formatter) {
+    formatter.options.put(profileEventsOption, new (Java.type("java.util.ArrayList"))());
+}
+
+// aggregates the events of a file, the evaluation time of a rule excludes the time spent in its callbacks
+var stopProfile = function(profile, formatter, input) {
+    var events = formatter.options.remove(profileEventsOption);
+    var rules = {};
+    var names = [];
+    var start = null;
+    var startCallbackNanos = 0;
+    var enterNanos = 0;
+    for (var i = 0; i < events.size(); i++) {
+        var e = events.get(i);
+        var r = rules[e[1]];
+        if (r == null) {
+            r = {evalNanos : 0, tuples : 0, callbacks : 0, callbackNanos : 0, allocatedBytes : 0, counting : null};
+            rules[e[1]] = r;
+            names.push("" + e[1]);
+        }
+        if (e[0] == "start") {
+            r.counting = e[4];
+            start = e;
+            startCallbackNanos = r.callbackNanos;
+        } else if (e[0] == "end") {
+            r.evalNanos += e[2] - start[2] - (r.callbackNanos - startCallbackNanos);
+            r.allocatedBytes += e[3] - start[3];
+        } else if (e[0] == "enter") {
+            enterNanos = e[2];
+        } else if (e[0] == "exit") {
+            r.callbacks++;
+            r.callbackNanos += e[2] - enterNanos;
+        } else {
+            r.tuples++;
+        }
+    }
+    for (var j = 0; j < names.length; j++) {
+        var r = rules[names[j]];
+        profile.rules.push({input : "" + input, rule : names[j], evalNanos : r.evalNanos,
+            tuples : r.counting == "callback" ? r.callbacks : r.counting == "tuple" ? r.tuples : null,
+            callbacks : r.callbacks, callbackNanos : r.callbackNanos, allocatedBytes : r.allocatedBytes});
+    }
+}
+
+// writes the profile as JSON if the file name ends with .json, otherwise as CSV
+var writeProfile = function(profile) {
+    var Files = Java.type("java.nio.file.Files");
+    var Paths = Java.type("java.nio.file.Paths");
+    var StandardCharsets = Java.type("java.nio.charset.StandardCharsets");
+    var millis = function(nanos) (nanos / 1000000).toFixed(3);
+    var csvValue = function(value) /[,"\n]/.test(value) ? '"' + value.split('"').join('""') + '"' : value;
+    var content;
+    if (profile.path.toLowerCase().endsWith(".json")) {
+        content = "[" + profile.rules.map(function(p) {
+            return '\n  {"input": ' + JSON.stringify(p.input) + ', "rule": ' + JSON.stringify(p.rule)
+                + ', "evalMillis": ' + millis(p.evalNanos) + ', "tuples": ' + p.tuples + ', "callbacks": ' + p.callbacks
+                + ', "callbackMillis": ' + millis(p.callbackNanos) + ', "allocatedBytes": ' + p.allocatedBytes + '}';
+        }).join(",") + "\n]\n";
+    } else {
+        content = "input,rule,eval_ms,tuples,callbacks,callback_ms,allocated_bytes\n" + profile.rules.map(function(p) {
+            return [csvValue(p.input), csvValue(p.rule), millis(p.evalNanos), p.tuples == null ? "" : p.tuples,
+                p.callbacks, millis(p.callbackNanos), p.allocatedBytes].join(",") + "\n";
+        }).join("");
+    }
+    Files.write(Paths.get(profile.path), content.getBytes(StandardCharsets.UTF_8));
+    Files.deleteIfExists(Paths.get(profile.arboriPath));
 }
 
 var existsDirectory = function(dir) {
@@ -153,13 +1012,31 @@ var printUsage = function (asCommand) {
     if (!asCommand) {
         ctx.write("  --register, -r  register SQLcl command tvdformat, without processing, no <rootPath> required\n")
     }
+    ctx.write("  --check         report files requiring formatting without changing them\n");
+    if (!asCommand) {
+        ctx.write("                  terminates SQLcl with exit status 1 if at least one file requires formatting\n");
+    }
     ctx.write("  ext=<ext>       comma separated list of file extensions to process, e.g. ext=sql,pks,pkb\n");
     ctx.write("  mext=<ext>      comma separated list of markdown file extensions to process, e.g. ext=md,mdown\n");
+    ctx.write("  extract=<list>  comma separated list of extractors for SQL code in other files, e.g. extract=liquibase,flyway\n");
+    ctx.write("                  liquibase (xml changelogs), flyway (java migrations), apex (application exports)\n");
     ctx.write("  xml=<file>      path to the file containing the xml file for advanced format settings\n");
     ctx.write("                  xml=default uses default advanced settings included in sqlcl\n");
     ctx.write("                  xml=embedded uses advanced settings defined in format.js\n");
     ctx.write("  arbori=<file>   path to the file containing the Arbori program for custom format settings\n");
-    ctx.write("                  arbori=default uses default Arbori program included in sqlcl\n\n");
+    ctx.write("                  arbori=default uses default Arbori program included in sqlcl\n");
+    ctx.write("  threads=<n>     number of files to format in parallel, default is 1\n");
+    ctx.write("                  the largest files are formatted first\n");
+    ctx.write("  timeout=<s>     time budget per file in seconds, files exceeding it are skipped\n");
+    ctx.write("  split=<lines>   format scripts in pieces of at least <lines> lines in parallel\n");
+    ctx.write("                  pieces are split at top-level statements, the result is the same as without split\n");
+    ctx.write("  cache=<file>    path to the file to store hashes of formatted files and syntax errors\n");
+    ctx.write("                  unchanged files are skipped in subsequent runs with the same settings\n");
+    ctx.write("  changed=<ref>   process only files changed since git ref and untracked files, e.g. changed=origin/main\n");
+    ctx.write("  profile=<file>  path to the file to store time, cardinality and allocated bytes per Arbori rule and file\n");
+    ctx.write("                  written as JSON if the file name ends with .json, otherwise as CSV\n");
+    ctx.write("  encoding=<name> character encoding of the files to format, default is UTF-8\n");
+    ctx.write("                  a byte order mark and CRLF line endings are preserved\n\n");
 }
 
 var getJsPath = function() {
@@ -194,6 +1071,17 @@ var processAndValidateArgs = function (args) {
     var markdownExtensions = [];
     var xmlPath = null;
     var arboriPath = null;
+    var threads = 1;
+    var cachePath = null;
+    var check = false;
+    var timeout = null;
+    var splitLines = null;
+    var changedRef = null;
+    var profilePath = null;
+    var extractorNames = [];
+    var extractorExtensions = [];
+    var StandardCharsets = Java.type("java.nio.charset.StandardCharsets");
+    var charset = StandardCharsets.UTF_8;
 
     var result = function(valid) {
         var result = {
@@ -202,6 +1090,16 @@ var processAndValidateArgs = function (args) {
             markdownExtensions : markdownExtensions,
             xmlPath : xmlPath,
             arboriPath : arboriPath, 
+            threads : threads,
+            cachePath : cachePath,
+            charset : charset,
+            check : check,
+            timeout : timeout,
+            splitLines : splitLines,
+            changedRef : changedRef,
+            profilePath : profilePath,
+            extractorNames : extractorNames,
+            extractorExtensions : extractorExtensions,
             valid : valid
         }
         return result;
@@ -217,6 +1115,10 @@ var processAndValidateArgs = function (args) {
         return result(false);
     }
     for (var i = 2; i < args.length; i++) {
+        if (args[i].toLowerCase() == "--check") {
+            check = true;
+            continue;
+        }
         if (args[i].toLowerCase().startsWith("ext=")) {
             extArgFound = true;
             if (args[i].length > 4) {
@@ -237,6 +1139,18 @@ var processAndValidateArgs = function (args) {
             }
             continue;
         }
+        if (args[i].toLowerCase().startsWith("extract=")) {
+            var values = args[i].substring(8).split(",");
+            for (var j in values) {
+                var name = values[j].toLowerCase();
+                if (extractors[name] == null) {
+                    ctx.write("unknown extractor " + values[j] + ".\n\n");
+                    return result(false);
+                }
+                extractorNames[extractorNames.length] = name;
+            }
+            continue;
+        }
         if (args[i].toLowerCase().startsWith("xml=")) {
             xmlPath = args[i].substring(4);
             if (!"default".equals(xmlPath) && !"embedded".equals(xmlPath)) {
@@ -259,6 +1173,68 @@ var processAndValidateArgs = function (args) {
             }
             continue;
         }
+        if (args[i].toLowerCase().startsWith("threads=")) {
+            var value = args[i].substring(8);
+            if (!value.matches("[1-9][0-9]*")) {
+                ctx.write("invalid number of threads " + value + ".\n\n");
+                return result(false);
+            }
+            threads = parseInt(value);
+            continue;
+        }
+        if (args[i].toLowerCase().startsWith("timeout=")) {
+            var value = args[i].substring(8);
+            if (!value.matches("[1-9][0-9]*")) {
+                ctx.write("invalid timeout " + value + ".\n\n");
+                return result(false);
+            }
+            timeout = parseInt(value);
+            continue;
+        }
+        if (args[i].toLowerCase().startsWith("split=")) {
+            var value = args[i].substring(6);
+            if (!value.matches("[1-9][0-9]*")) {
+                ctx.write("invalid split size " + value + ".\n\n");
+                return result(false);
+            }
+            splitLines = parseInt(value);
+            continue;
+        }
+        if (args[i].toLowerCase().startsWith("cache=")) {
+            cachePath = getCdPath(args[i].substring(6));
+            if (existsDirectory(cachePath)) {
+                ctx.write("cache file " + cachePath + " is a directory.\n\n");
+                return result(false);
+            }
+            continue;
+        }
+        if (args[i].toLowerCase().startsWith("changed=")) {
+            changedRef = args[i].substring(8);
+            if (rootPath == "*" || changedRef.length == 0 || changedRef.startsWith("-")) {
+                ctx.write("invalid git ref " + changedRef + ".\n\n");
+                return result(false);
+            }
+            continue;
+        }
+        if (args[i].toLowerCase().startsWith("profile=")) {
+            profilePath = getCdPath(args[i].substring(8));
+            if (existsDirectory(profilePath)) {
+                ctx.write("profile file " + profilePath + " is a directory.\n\n");
+                return result(false);
+            }
+            continue;
+        }
+        if (args[i].toLowerCase().startsWith("encoding=")) {
+            var Charset = Java.type("java.nio.charset.Charset");
+            var value = args[i].substring(9);
+            try {
+                charset = Charset.forName(value);
+            } catch (e) {
+                ctx.write("unsupported encoding " + value + ".\n\n");
+                return result(false);
+            }
+            continue;
+        }
         ctx.write("invalid argument " + args[i] + ".\n\n");
         return result(false);
     }
@@ -272,6 +1248,14 @@ var processAndValidateArgs = function (args) {
     for (var j in markdownExtensions) {
         extensions[extensions.length] = markdownExtensions[j];
     }
+    for (var j in extractorNames) {
+        var extension = extractors[extractorNames[j]].extension;
+        if (extensions.indexOf(extension) < 0) {
+            // files with this extension are processed only if accepted by an extractor
+            extensions[extensions.length] = extension;
+            extractorExtensions[extractorExtensions.length] = extension;
+        }
+    }
     if (xmlPath == null) {
         xmlPath = getJsPath() + "../settings/sql_developer/trivadis_advanced_format.xml"
         if (!existsFile(xmlPath)) {
@@ -286,18 +1270,68 @@ var processAndValidateArgs = function (args) {
             arboriPath = "default"; 
         }
     }
+    if (profilePath != null) {
+        if ("default".equals(arboriPath)) {
+            ctx.write("option profile requires an Arbori program file.\n\n");
+            return result(false);
+        }
+        if (rootPath == "*" || threads > 1 || timeout != null || splitLines != null || cachePath != null) {
+            // events are recorded per formatter, files must be formatted one after the other and completely
+            ctx.write("option profile cannot be combined with *, threads, timeout, split or cache.\n\n");
+            return result(false);
+        }
+    }
     return result(true);
 }
 
-var formatBuffer = function(formatter) {
+// formatted statements of the previous formatBuffer call per SQLcl session
+var bufferStates = new (Java.type("java.util.WeakHashMap"))();
+
+// formats only statements not formatted by the previous call in the same session
+var formatBufferContent = function(original, formatter, formatterKey) {
+    var HashMap = Java.type("java.util.HashMap");
+    var StringBuilder = Java.type("java.lang.StringBuilder");
+    var blocks = isSplitSupported(formatter) ? getScriptBlocks(original, 1) : null;
+    if (blocks == null) {
+        bufferStates.remove(ctx);
+        return formatContent(original, formatter, true);
+    }
+    var state = bufferStates.get(ctx);
+    var previous = state != null && state.formatterKey == formatterKey ? state.statements : new HashMap();
+    var statements = new HashMap();
+    var formatted = new StringBuilder(original.length);
+    for (var i = 0; i < blocks.length; i++) {
+        var statement = previous.get(blocks[i].content);
+        if (statement == null) {
+            var result = formatContent(blocks[i].content, formatter, false);
+            if (result.syntaxError) {
+                // the syntax error message must be based on the whole buffer
+                bufferStates.remove(ctx);
+                return formatContent(original, formatter, true);
+            }
+            statement = result.formatted;
+        }
+        // unchanged statements are found by their original and their formatted content
+        statements.put(blocks[i].content, statement);
+        statements.put(statement, statement);
+        formatted.append(statement).append(blocks[i].separator);
+    }
+    // only the statements of the current buffer are kept
+    bufferStates.put(ctx, {formatterKey : formatterKey, statements : statements});
+    return {formatted : formatted.toString(), syntaxError : false, syntaxErrorMessage : null};
+}
+
+var formatBuffer = function(formatter, formatterKey) {
     ctx.write("Formatting SQLcl buffer... ");
     ctx.getOutputStream().flush();
     var original = ctx.getSQLPlusBuffer().getBufferSafe().getBuffer();
-    if (hasParseErrors(original, true)) {
+    var result = formatBufferContent(original, formatter, formatterKey);
+    if (result.syntaxError) {
+        ctx.write(result.syntaxErrorMessage);
         ctx.write("skipped.\n");
     } else {
         var Arrays = Java.type("java.util.Arrays");
-        var formatted = Arrays.asList(formatter.format(original).split("\n"));
+        var formatted = Arrays.asList(result.formatted.split("\n"));
         ctx.getSQLPlusBuffer().getBufferSafe().resetBuffer(formatted);
         ctx.write("done.\n");
         ctx.write(ctx.getSQLPlusBuffer().getBufferSafe().list(false));
@@ -315,67 +1349,776 @@ var isMarkdownFile = function(file, markdownExtensions) {
     return false;
 } 
 
-var formatMarkdownFile = function(file, formatter) {
-    var original = readFile(file)
+// a block contains the SQL code of a region of a file and a function to convert the formatted code back
+var getBlock = function(content, start, end) {
+    return {start : start, end : end, content : content.substring(start, end), encode : function(formatted) formatted};
+}
+
+// removes the indentation of the line containing start from subsequent lines, e.g. for SQL code in XML elements
+var getIndentedBlock = function(content, start, end) {
+    while (start < end && /\s/.test(content.charAt(start))) {
+        start++;
+    }
+    while (end > start && /\s/.test(content.charAt(end - 1))) {
+        end--;
+    }
+    if (start == end) {
+        return null;
+    }
+    var lineStart = content.lastIndexOf("\n", start - 1) + 1;
+    var indentEnd = lineStart;
+    while (indentEnd < start && /\s/.test(content.charAt(indentEnd))) {
+        indentEnd++;
+    }
+    var indent = content.substring(lineStart, indentEnd);
+    var lines = content.substring(start, end).split("\n");
+    if (indent.length == 0 || lines.length == 1) {
+        return getBlock(content, start, end);
+    }
+    for (var i = 1; i < lines.length; i++) {
+        if (lines[i].startsWith(indent)) {
+            lines[i] = lines[i].substring(indent.length);
+        } else if (lines[i].trim().length == 0 && lines[i].length < indent.length) {
+            lines[i] = "";
+        } else {
+            // e.g. a multiline string literal, must not be changed
+            return getBlock(content, start, end);
+        }
+    }
+    return {start : start, end : end, content : lines.join("\n"),
+        encode : function(formatted) formatted.replace(/\n(?=[^\n])/g, "\n" + indent)};
+}
+
+var getMarkdownBlocks = function(original) {
     var Pattern = Java.type("java.util.regex.Pattern");
     var p = Pattern.compile("(```\\s*sql\\s*\\n)(.+?)(\\n```)", Pattern.DOTALL);
     var m = p.matcher(original);
-    var result = "";
-    var pos = 0;
+    var blocks = [];
     while (m.find()) {
-        result += original.substring(pos, m.end(1));
-        if (hasParseErrors(m.group(2), false)) {
-            result += original.substring(m.start(2), m.end(3));
-        } else {
-            result += formatter.format(m.group(2));
-            result += original.substring(m.end(2), m.end(3));
+        blocks[blocks.length] = getBlock(original, m.start(2), m.end(2));
+    }
+    return blocks;
+}
+
+var getLiquibaseBlocks = function(original) {
+    var Pattern = Java.type("java.util.regex.Pattern");
+    var blocks = [];
+    var p = Pattern.compile("<(sql|createProcedure|createView)(\\s[^>]*)?(?<!/)>(.*?)</\\1\\s*>", Pattern.DOTALL);
+    var cdata = Pattern.compile("\\s*<!\\[CDATA\\[(.*?)]]>\\s*", Pattern.DOTALL);
+    var m = p.matcher(original);
+    while (m.find()) {
+        var start = m.start(3);
+        var end = m.end(3);
+        var c = cdata.matcher(original).region(start, end);
+        if (c.matches()) {
+            start = c.start(1);
+            end = c.end(1);
+        } else if (original.substring(start, end).search(/[<&]/) >= 0) {
+            // markup or entities outside of a CDATA section
+            continue;
+        }
+        var block = getIndentedBlock(original, start, end);
+        if (block != null) {
+            blocks[blocks.length] = block;
         }
-        pos = m.end(3);
     }
-    if (original.length > pos) {
-        result += original.substring(pos);
+    return blocks;
+}
+
+var getFlywayBlocks = function(original) {
+    var Pattern = Java.type("java.util.regex.Pattern");
+    var blocks = [];
+    var p = Pattern.compile("\"\"\"[ \\t\\f]*\\n(.*?)\"\"\"", Pattern.DOTALL);
+    var m = p.matcher(original);
+    while (m.find()) {
+        if (m.group(1).indexOf("\\") >= 0) {
+            // text block with escape sequences
+            continue;
+        }
+        var block = getIndentedBlock(original, m.start(1), m.end(1));
+        if (block != null) {
+            blocks[blocks.length] = block;
+        }
     }
-    writeFile(file, result);
-    ctx.write("done.\n");
+    return blocks;
 }
 
-var formatFile = function(file, formatter) {
-    var original = readFile(file)
-    if (hasParseErrors(original, true)) {
-        ctx.write("skipped.\n");
+var getApexBlocks = function(original) {
+    var Pattern = Java.type("java.util.regex.Pattern");
+    var p = Pattern.compile("^,p_(?:plug_source|process_sql_clob|lov_query)=>(wwv_flow_string\\.join\\(wwv_flow_t_varchar2\\()?", Pattern.MULTILINE);
+    var skipWhitespace = function(pos) {
+        while (pos < original.length && /\s/.test(original.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+    var getLiteralEnd = function(pos) {
+        var i = pos + 1;
+        while (i < original.length) {
+            if (original.charAt(i) == "'") {
+                if (original.charAt(i + 1) == "'") {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+    var quote = function(line) "'" + line.replace(/'/g, "''") + "'";
+    var createBlock = function(start, end, lines, join) {
+        return {start : start, end : end, content : lines.join("\n"), encode : function(formatted) {
+            return join ? formatted.split("\n").map(quote).join(",\n") : quote(formatted);
+        }};
+    }
+    var blocks = [];
+    var m = p.matcher(original);
+    while (m.find()) {
+        var join = m.group(1) != null;
+        var lines = [];
+        var pos = skipWhitespace(m.end());
+        var start = pos;
+        var end = -1;
+        while (pos < original.length && original.charAt(pos) == "'") {
+            var literalEnd = getLiteralEnd(pos);
+            if (literalEnd < 0) {
+                break;
+            }
+            lines[lines.length] = original.substring(pos + 1, literalEnd - 1).replace(/''/g, "'");
+            end = literalEnd;
+            pos = skipWhitespace(literalEnd);
+            if (!join || original.charAt(pos) != ",") {
+                break;
+            }
+            pos = skipWhitespace(pos + 1);
+        }
+        if (end < 0 || join && !original.startsWith("))", pos)
+                || !join && !original.startsWith(",", pos) && !original.startsWith(")", pos)) {
+            // e.g. an expression concatenating literals
+            continue;
+        }
+        blocks[blocks.length] = createBlock(start, end, lines, join);
+    }
+    return blocks;
+}
+
+// extractors for SQL code embedded in other files, enabled by the extract option, same as SqlExtractor in Java
+var extractors = {
+    liquibase : {
+        extension : ".xml",
+        accepts : function(file, content) file.toString().toLowerCase().endsWith(".xml")
+            && content.indexOf("<databaseChangeLog") >= 0,
+        extract : getLiquibaseBlocks
+    },
+    flyway : {
+        extension : ".java",
+        accepts : function(file, content) file.toString().toLowerCase().endsWith(".java")
+            && content.indexOf("org.flywaydb") >= 0,
+        extract : getFlywayBlocks
+    },
+    apex : {
+        extension : ".sql",
+        accepts : function(file, content) file.toString().toLowerCase().endsWith(".sql")
+            && (content.indexOf("wwv_flow_imp.import_begin") >= 0 || content.indexOf("wwv_flow_api.import_begin") >= 0),
+        extract : getApexBlocks
+    }
+}
+
+var getExtractor = function(file, content, context) {
+    if (isMarkdownFile(file, context.markdownExtensions)) {
+        return {extract : getMarkdownBlocks};
+    }
+    for (var i = 0; i < context.extractors.length; i++) {
+        if (context.extractors[i].accepts(file, content)) {
+            return context.extractors[i];
+        }
+    }
+    return null;
+}
+
+var formatBlocks = function(blocks, context) {
+    var FutureTask = Java.type("java.util.concurrent.FutureTask");
+    var Callable = Java.type("java.util.concurrent.Callable");
+    var createTask = function(block) {
+        return new FutureTask(new Callable(function() formatContent(block.content, context.formatters.get(), false)));
+    }
+    var tasks = [];
+    for (var i = 0; i < blocks.length; i++) {
+        tasks[i] = createTask(blocks[i]);
+        if (context.executor != null && blocks.length > 1) {
+            context.executor.execute(tasks[i]);
+        }
+    }
+    var results = [];
+    for (var i = 0; i < tasks.length; i++) {
+        // runs the task in the current thread, if not yet started by a worker; avoids deadlocks in a saturated pool
+        tasks[i].run();
+        results[i] = tasks[i].get();
+    }
+    return results;
+}
+
+// SQL*Plus commands ending at the end of the line, without semicolon
+var sqlplusCommands = (function() {
+    var commands = {};
+    var names = ["@", "@@", "acc", "accept", "archive", "attribute", "break", "btitle", "clear", "col", "column", "compute",
+        "conn", "connect", "copy", "def", "define", "desc", "describe", "disc", "disconnect", "exec", "execute", "exit",
+        "host", "pause", "print", "pro", "prompt", "quit", "rem", "remark", "repfooter", "repheader", "script", "set",
+        "sho", "show", "spo", "spool", "sta", "start", "store", "timing", "ttitle", "undef", "undefine", "var",
+        "variable", "whenever"];
+    for (var i = 0; i < names.length; i++) {
+        commands[names[i]] = true;
+    }
+    return commands;
+})();
+
+var isSplitSupported = function(formatter) {
+    var BreaksX2 = Java.type("oracle.dbtools.app.Format.BreaksX2");
+    // with Keep the formatter preserves the line breaks between statements, at most one empty line
+    return formatter.options.get(formatter.extraLinesAfterSignificantStatements) == BreaksX2.Keep;
+}
+
+// splits a script into blocks of at least minLines lines at top-level statement boundaries, returns null if not splittable
+var getScriptBlocks = function(content, minLines) {
+    var LexerToken = Java.type("oracle.dbtools.parser.LexerToken");
+    var Token = Java.type("oracle.dbtools.parser.Token");
+    var tokens = LexerToken.parse(content, true);
+    var count = tokens.size();
+    var isHidden = function(t) {
+        return t.type == Token.WS || t.type == Token.COMMENT || t.type == Token.LINE_COMMENT
+            || t.type == Token.MACRO_SKIP || t.type == Token.SQLPLUSLINECONTINUE_SKIP;
+    }
+    var isLineEnd = function(t) {
+        return t.content == "\n" || (t.type == Token.LINE_COMMENT && t.content.endsWith("\n"));
+    }
+    var nextWord = function(i) {
+        for (var j = i + 1; j < count; j++) {
+            if (!isHidden(tokens[j])) {
+                return {index : j, word : tokens[j].content.toLowerCase()};
+            }
+        }
+        return {index : count, word : ""};
+    }
+    var getKind = function(i) {
+        var word = tokens[i].content.toLowerCase();
+        if (word == "/") {
+            return "slash";
+        }
+        if (word == "set") {
+            var next = nextWord(i).word;
+            return next == "transaction" || next == "role" || next == "constraint" || next == "constraints" ? "sql" : "sqlplus";
+        }
+        if (sqlplusCommands[word] === true) {
+            return "sqlplus";
+        }
+        if (word == "declare" || word == "begin") {
+            return "plsql";
+        }
+        if (word == "create" || word == "with") {
+            var next = nextWord(i);
+            while (["or", "replace", "editionable", "editioning", "noneditionable", "force"].indexOf(next.word) >= 0) {
+                next = nextWord(next.index);
+            }
+            if (["package", "procedure", "function", "trigger", "type", "library", "java", "and"].indexOf(next.word) >= 0) {
+                return "plsql";
+            }
+        }
+        return "sql";
+    }
+    var isLoneSlash = function(i, lineHasContent) {
+        if (tokens[i].content != "/" || lineHasContent) {
+            return false;
+        }
+        for (var j = i + 1; j < count; j++) {
+            if (isLineEnd(tokens[j])) {
+                return true;
+            }
+            if (tokens[j].type != Token.WS) {
+                return false;
+            }
+        }
+        return true;
+    }
+    var blocks = [];
+    var blockStart = 0;
+    var blockLines = 0;
+    var off = false;
+    var kind = null;            // kind of the current statement, null between statements
+    var lineHasContent = false; // token other than WS on the current line
+    var continued = false;      // SQL*Plus line continuation
+    var statementEnd = -1;      // end position of the last complete statement
+    var boundary = false;       // a block may end at statementEnd
+    var newLines = 0;           // line breaks after statementEnd
+    for (var i = 0; i < count; i++) {
+        var t = tokens[i];
+        if (t.type == Token.INCOMPLETE) {
+            return null;
+        }
+        if (t.type == Token.COMMENT || t.type == Token.LINE_COMMENT) {
+            var comment = t.content.toLowerCase();
+            if (comment.contains("@formatter:off") || comment.contains("noformat start")) {
+                off = true;
+            } else if (comment.contains("@formatter:on") || comment.contains("noformat end")) {
+                off = false;
+            }
+            if (kind == null) {
+                // comments between statements are kept together with the surrounding statements
+                boundary = false;
+            }
+        }
+        if (t.type == Token.SQLPLUSLINECONTINUE_SKIP) {
+            continued = true;
+        }
+        if (isLineEnd(t)) {
+            blockLines++;
+            if (kind == "sqlplus" || kind == "slash") {
+                if (continued) {
+                    continued = false;
+                } else {
+                    kind = null;
+                    boundary = !off;
+                    newLines = 0;
+                }
+            }
+            if (kind == null) {
+                newLines++;
+            }
+            lineHasContent = false;
+            continue;
+        }
+        if (isHidden(t)) {
+            if (t.type != Token.WS) {
+                lineHasContent = true;
+            }
+            continue;
+        }
+        if (kind == null) {
+            var nextKind = getKind(i);
+            var firstInLine = i == 0 || isLineEnd(tokens[i - 1]);
+            if (boundary && newLines > 0 && firstInLine && nextKind != "slash" && blockLines >= minLines && !off) {
+                blocks.push({start : blockStart, end : statementEnd, separator : newLines > 1 ? "\n\n" : "\n"});
+                blockStart = t.begin;
+                blockLines = 0;
+            }
+            kind = nextKind;
+            boundary = false;
+        }
+        if (kind == "sqlplus" || kind == "slash") {
+            statementEnd = t.end;
+        } else if ((kind == "sql" && t.content == ";") || isLoneSlash(i, lineHasContent)) {
+            statementEnd = t.end;
+            kind = null;
+            newLines = 0;
+            // the rest of the line must be empty
+            boundary = !off;
+            for (var j = i + 1; j < count && !isLineEnd(tokens[j]); j++) {
+                if (tokens[j].type != Token.WS) {
+                    boundary = false;
+                }
+            }
+        }
+        lineHasContent = true;
+    }
+    if (blocks.length == 0) {
+        return null;
+    }
+    blocks.push({start : blockStart, end : content.length, separator : ""});
+    for (var k = 0; k < blocks.length; k++) {
+        blocks[k].content = content.substring(blocks[k].start, blocks[k].end);
+    }
+    return blocks;
+}
+
+var formatScript = function(original, context) {
+    var formatter = context.formatters.get();
+    var blocks = context.splitLines != null && isSplitSupported(formatter) ? getScriptBlocks(original, context.splitLines) : null;
+    if (blocks == null) {
+        return formatContent(original, formatter, true);
+    }
+    var StringBuilder = Java.type("java.lang.StringBuilder");
+    var results = formatBlocks(blocks, context);
+    var formatted = new StringBuilder(original.length);
+    for (var i = 0; i < blocks.length; i++) {
+        if (results[i].syntaxError) {
+            // the syntax error message must be based on the whole file
+            return formatContent(original, formatter, true);
+        }
+        formatted.append(results[i].formatted).append(blocks[i].separator);
+    }
+    return {formatted : formatted.toString(), syntaxError : false, syntaxErrorMessage : null};
+}
+
+var writeExtractedFile = function(file, source, blocks, results) {
+    var original = source.content;
+    return writeSourceFile(file, source, function(writer) {
+        var pos = 0;
+        for (var i = 0; i < blocks.length; i++) {
+            if (!results[i].syntaxError && !results[i].formatted.equals(blocks[i].content)) {
+                var encoded = blocks[i].encode(results[i].formatted);
+                writeText(writer, original, pos, blocks[i].start, source.lineSeparator);
+                writeText(writer, encoded, 0, encoded.length, source.lineSeparator);
+                pos = blocks[i].end;
+            }
+        }
+        writeText(writer, original, pos, original.length, source.lineSeparator);
+    });
+}
+
+var formatFile = function(file, context, claim) {
+    var CharacterCodingException = Java.type("java.nio.charset.CharacterCodingException");
+    var source;
+    try {
+        source = readSourceFile(file, context.charset);
+    } catch (e) {
+        if (e instanceof CharacterCodingException) {
+            return "file is not encoded in " + context.charset.name() + "... skipped.\n";
+        }
+        throw e;
+    }
+    var original = source.content;
+    var hash = source.hash;
+    if (context.cache != null) {
+        var entry = getCacheEntry(context.cache, hash);
+        if (entry != null) {
+            // known formatted content (empty entry) or known syntax error (error message)
+            if (entry.isEmpty()) {
+                return context.check ? "already formatted.\n" : "done.\n";
+            }
+            return entry + "skipped.\n";
+        }
+    }
+    var extractor = getExtractor(file, original, context);
+    if (extractor == null && hasExtension(file, context.extractorExtensions)) {
+        // file selected for an extractor, e.g. an xml file that is not a Liquibase changelog
+        return "no embedded SQL code found... skipped.\n";
+    }
+    var blocks = null;
+    var results = null;
+    var changed = false;
+    if (extractor != null) {
+        blocks = extractor.extract(original);
+        results = formatBlocks(blocks, context);
+        for (var i = 0; i < blocks.length; i++) {
+            if (!results[i].syntaxError && !results[i].formatted.equals(blocks[i].content)) {
+                changed = true;
+            }
+        }
     } else {
-        writeFile(file, formatter.format(original));
-        ctx.write("done.\n");
+        var result = formatScript(original, context);
+        changed = !result.syntaxError && !result.formatted.equals(original);
     }
+    if (claim != null && !claim()) {
+        // time budget exceeded, the file must not be written anymore
+        return null;
+    }
+    if (extractor == null && result.syntaxError) {
+        if (context.cache != null) {
+            putCacheEntry(context.cache, hash, result.syntaxErrorMessage);
+        }
+        return result.syntaxErrorMessage + "skipped.\n";
+    }
+    // an already formatted file is not written, keeps the modification time
+    var formattedHash = hash;
+    if (changed) {
+        context.changedFiles.incrementAndGet();
+        if (context.check) {
+            return "requires formatting.\n";
+        }
+        if (extractor != null) {
+            formattedHash = writeExtractedFile(file, source, blocks, results);
+        } else {
+            formattedHash = writeFile(file, source, result.formatted);
+        }
+    }
+    if (context.cache != null) {
+        putCacheEntry(context.cache, formattedHash, "");
+    }
+    return context.check ? "already formatted.\n" : "done.\n";
 }
 
-var formatFiles = function(files, formatter, markdownExtensions) {
+var formatFiles = function(files, context) {
     for (var i in files) {
-        ctx.write("Formatting file " + (i+1) + " of " + files.length + ": " + files[i].toString() + "... ");
+        ctx.write((context.check ? "Checking" : "Formatting") + " file " + (i+1) + " of " + files.length + ": " + files[i].toString() + "... ");
         ctx.getOutputStream().flush();
-        if (isMarkdownFile(files[i], markdownExtensions)) {
-            formatMarkdownFile(files[i], formatter);
+        if (context.profile != null) {
+            startProfile(context.formatters.get());
+        }
+        ctx.write(formatFile(files[i], context, null));
+        if (context.profile != null) {
+            stopProfile(context.profile, context.formatters.get(), files[i].toString());
+        }
+        ctx.getOutputStream().flush();
+    }
+}
+
+var resizeExecutor = function(executor, delta) {
+    Java.synchronized(function() {
+        if (delta > 0) {
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
         } else {
-            formatFile(files[i], formatter);
+            executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+            executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
         }
+    }, executor)();
+}
+
+var submitFileWithTimeout = function(file, size, context) {
+    var CompletableFuture = Java.type("java.util.concurrent.CompletableFuture");
+    var FutureTask = Java.type("java.util.concurrent.FutureTask");
+    var Callable = Java.type("java.util.concurrent.Callable");
+    var Runnable = Java.type("java.lang.Runnable");
+    var AtomicInteger = Java.type("java.util.concurrent.atomic.AtomicInteger");
+    var TimeUnit = Java.type("java.util.concurrent.TimeUnit");
+    var Thread = Java.type("java.lang.Thread");
+    var RUNNING = 0, DONE = 1, TIMED_OUT = 2;
+    var state = new AtomicInteger(RUNNING);
+    var result = new CompletableFuture();
+    var task = new FutureTask(new Callable(function() formatFile(file, context, function() state.compareAndSet(RUNNING, DONE))));
+    var worker = new Runnable(function() {
+        context.formatters.get();
+        var thread = Thread.currentThread();
+        // the time budget starts when a worker picks up the file
+        var timer = context.timer.schedule(new Runnable(function() {
+            if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+                context.abandon(thread);
+                // the formatter cannot be interrupted, an additional thread keeps the number of available workers
+                resizeExecutor(context.executor, 1);
+                result.complete("timed out, skipped.\n");
+            }
+        }), context.timeout, TimeUnit.SECONDS);
+        task.run();
+        timer.cancel(false);
+        if (state.compareAndSet(RUNNING, DONE) || state.get() == DONE) {
+            try {
+                result.complete(task.get());
+            } catch (e) {
+                result.completeExceptionally(e.getCause());
+            }
+        } else {
+            // the next file processed by this thread gets a new formatter
+            context.formatters.remove();
+            resizeExecutor(context.executor, -1);
+        }
+    });
+    context.taskSizes.put(worker, size);
+    context.executor.execute(worker);
+    return result;
+}
+
+// files waiting for a worker are processed largest first, other tasks (e.g. blocks of a file in progress) before files
+var createExecutor = function(threads, taskSizes) {
+    var ThreadPoolExecutor = Java.type("java.util.concurrent.ThreadPoolExecutor");
+    var PriorityBlockingQueue = Java.type("java.util.concurrent.PriorityBlockingQueue");
+    var TimeUnit = Java.type("java.util.concurrent.TimeUnit");
+    var Comparator = Java.type("java.util.Comparator");
+    var Long = Java.type("java.lang.Long");
+    var getSize = function(task) {
+        var size = taskSizes.get(task);
+        return size == null ? Long.MAX_VALUE : size;
+    }
+    var queue = new PriorityBlockingQueue(11, new Comparator(function(a, b) Long.compare(getSize(b), getSize(a))));
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
+}
+
+var submitFile = function(file, size, context) {
+    if (context.timeout != null) {
+        return submitFileWithTimeout(file, size, context);
+    }
+    var FutureTask = Java.type("java.util.concurrent.FutureTask");
+    var Callable = Java.type("java.util.concurrent.Callable");
+    var task = new FutureTask(new Callable(function() formatFile(file, context, null)));
+    context.taskSizes.put(task, size);
+    context.executor.execute(task);
+    return task;
+}
+
+var writeResults = function(files, results, context) {
+    // console output in the same order as in formatFiles, the result of the i-th file is awaited before the i+1-th 
+    for (var i = 0; i < files.length; i++) {
+        ctx.write((context.check ? "Checking" : "Formatting") + " file " + (i+1) + " of " + files.length + ": " + files[i].toString() + "... ");
+        ctx.getOutputStream().flush();
+        ctx.write(results[i].get());
         ctx.getOutputStream().flush();
     }
 }
 
-var run = function(args) { 
+var formatFilesInParallel = function(files, context) {
+    var Files = Java.type("java.nio.file.Files");
+    // largest files first, a large file at the end of the list would determine the elapsed time of the run
+    var order = [];
+    for (var i = 0; i < files.length; i++) {
+        order[i] = {index : i, size : Files.size(files[i])};
+    }
+    order.sort(function(a, b) b.size - a.size || a.index - b.index);
+    var results = [];
+    for (var j = 0; j < order.length; j++) {
+        results[order[j].index] = submitFile(files[order[j].index], order[j].size, context);
+    }
+    writeResults(files, results, context);
+}
+
+var formatDirectoryInParallel = function(rootPath, extensions, context) {
+    var Files = Java.type("java.nio.file.Files");
+    var HashMap = Java.type("java.util.HashMap");
+    var submitted = new HashMap();
+    // files are formatted while the directory tree is walked, the output starts when the number of files is known
+    var files = walkFiles(rootPath, extensions, function(file) {
+        submitted.put(file, submitFile(file, Files.size(file), context));
+    });
+    var results = [];
+    for (var i = 0; i < files.length; i++) {
+        results[i] = submitted.get(files[i]);
+    }
+    writeResults(files, results, context);
+    return files;
+}
+
+var createContext = function(options) {
+    var Executors = Java.type("java.util.concurrent.Executors");
+    var ThreadLocal = Java.type("java.lang.ThreadLocal");
+    var ConcurrentHashMap = Java.type("java.util.concurrent.ConcurrentHashMap");
+    var Thread = Java.type("java.lang.Thread");
+    var TimeUnit = Java.type("java.util.concurrent.TimeUnit");
+    var formatterKey = getFormatterKey(options.xmlPath, options.arboriPath);
+    // formatters by thread, a formatter is returned to the idle formatters only if its thread is not using it anymore
+    var acquiredFormatters = new ConcurrentHashMap();
+    var acquire = function() {
+        var formatter = acquireFormatter(options.xmlPath, options.arboriPath, formatterKey);
+        acquiredFormatters.put(Thread.currentThread(), formatter);
+        if (options.timeout != null) {
+            // the Arbori program is compiled on first use, this must not count against the time budget of a file
+            formatter.format("select 1 from dual");
+        }
+        return formatter;
+    }
+    var context = {
+        markdownExtensions : options.markdownExtensions,
+        extractorExtensions : options.extractorExtensions,
+        extractors : options.extractorNames.map(function(name) extractors[name]),
+        charset : options.charset,
+        splitLines : options.splitLines,
+        check : options.check,
+        changedFiles : new (Java.type("java.util.concurrent.atomic.AtomicInteger"))(),
+        // Format instances are not thread-safe, each thread gets its own configured instance
+        formatters : ThreadLocal.withInitial(acquire),
+        executor : null,
+        taskSizes : new (Java.type("java.util.concurrent.ConcurrentHashMap"))(),
+        timeout : options.timeout,
+        timer : null,
+        cache : null,
+        abandon : function(thread) {
+            // the formatter of a timed out worker is still in use and must never be reused
+            acquiredFormatters.remove(thread);
+        },
+        release : function() {
+            if (context.executor != null) {
+                // idle workers terminate immediately, workers still formatting (e.g. blocks of a timed out file) do not
+                context.executor.shutdownNow();
+                context.executor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            acquiredFormatters.forEach(function(thread, formatter) {
+                if (thread == Thread.currentThread() || !thread.isAlive()) {
+                    releaseFormatter(formatter, formatterKey);
+                }
+            });
+            acquiredFormatters.clear();
+        }
+    }
+    if (options.threads > 1 || options.timeout != null) {
+        context.executor = createExecutor(options.threads, context.taskSizes);
+    }
+    if (options.timeout != null) {
+        context.timer = Executors.newSingleThreadScheduledExecutor();
+    }
+    if (options.cachePath != null) {
+        context.cache = loadCache(options.cachePath, getSettingsFingerprint(context.formatters.get(), options.charset));
+    }
+    return context;
+}
+
+var exitWithStatus = function(status) {
+    ctx.getOutputStream().flush();
+    if (typeof exitHandler != "undefined") {
+        // bound by an application embedding this script, e.g. a test, to get the status without terminating the JVM
+        exitHandler(status);
+        return;
+    }
+    // a script cannot set the exit status of SQLcl, a failed check must terminate the JVM to be noticed by a CI job
+    var System = Java.type("java.lang.System");
+    System.exit(status);
+}
+
+// returns the exit status, 1 if a check found files requiring formatting, otherwise 0
+var run = function(args) {
     ctx.write("\n");
     var options = processAndValidateArgs(args);
     if (!options.valid) {
         printUsage(args[0].equalsIgnoreCase("tvdformat"));
     } else {
-        var formatter = getConfiguredFormatter(options.xmlPath, options.arboriPath);
         if (options.rootPath == "*") {
-            formatBuffer(formatter);
+            var formatterKey = getFormatterKey(options.xmlPath, options.arboriPath);
+            var formatter = acquireFormatter(options.xmlPath, options.arboriPath, formatterKey);
+            try {
+                formatBuffer(formatter, formatterKey);
+            } finally {
+                releaseFormatter(formatter, formatterKey);
+            }
         } else {
-            var files = getFiles(options.rootPath, options.extensions);
-            formatFiles(files, formatter, options.markdownExtensions);
+            var files = null;
+            if (options.changedRef != null) {
+                files = getChangedFiles(options.rootPath, options.changedRef, options.extensions);
+                if (files == null) {
+                    return 0;
+                }
+            }
+            var profile = null;
+            if (options.profilePath != null) {
+                try {
+                    profile = createProfile(options.arboriPath, options.profilePath);
+                } catch (e) {
+                    ctx.write(e + "\n");
+                    return 0;
+                }
+                options.arboriPath = profile.arboriPath;
+            }
+            var context = createContext(options);
+            context.profile = profile;
+            try {
+                if (files == null && context.executor != null && existsDirectory(options.rootPath)) {
+                    files = formatDirectoryInParallel(options.rootPath, options.extensions, context);
+                } else {
+                    if (files == null) {
+                        files = getFiles(options.rootPath, options.extensions);
+                    }
+                    if (context.executor != null && (files.length > 1 || context.timeout != null)) {
+                        formatFilesInParallel(files, context);
+                    } else {
+                        formatFiles(files, context);
+                    }
+                }
+            } finally {
+                if (context.timer != null) {
+                    context.timer.shutdownNow();
+                }
+                context.release();
+            }
+            if (context.cache != null) {
+                saveCache(context.cache);
+            }
+            if (profile != null) {
+                writeProfile(profile);
+            }
+            if (context.check) {
+                ctx.write("\n" + context.changedFiles.get() + " of " + files.length + " files require formatting.\n");
+                if (context.changedFiles.get() > 0) {
+                    return 1;
+                }
+            }
         }
     }
+    return 0;
 }
 
 var getArgs = function(cmdLine) {
@@ -438,6 +2181,7 @@ var registerTvdFormat = function() {
 // main
 if (args.length >= 2 && (args[1].equalsIgnoreCase("-r") || args[1].equalsIgnoreCase("--register"))) {
     registerTvdFormat();
-} else {
-    run(args);
+} else if (run(args) != 0) {
+    // only when running as script, the tvdformat command must not terminate an interactive SQLcl session
+    exitWithStatus(1);
 }    
@@ -0,0 +1,103 @@
+package com.trivadis.plsql.formatter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts SQL code from region sources, processes and LOV queries of APEX application exports.
+ * Supports a single string literal and a list of string literals passed to wwv_flow_string.join,
+ * one literal per line. The export itself is not formatted.
+ */
+public class ApexExportExtractor implements SqlExtractor {
+    private static final Pattern SQL_PARAMETER = Pattern.compile(
+            "^,p_(?:plug_source|process_sql_clob|lov_query)=>(wwv_flow_string\\.join\\(wwv_flow_t_varchar2\\()?",
+            Pattern.MULTILINE);
+
+    @Override
+    public String getName() {
+        return "apex";
+    }
+
+    @Override
+    public boolean accepts(Path file, String content) {
+        return file.toString().toLowerCase().endsWith(".sql")
+                && (content.contains("wwv_flow_imp.import_begin") || content.contains("wwv_flow_api.import_begin"));
+    }
+
+    @Override
+    public List<SqlRegion> extract(String content) {
+        final List<SqlRegion> regions = new ArrayList<>();
+        final Matcher m = SQL_PARAMETER.matcher(content);
+        while (m.find()) {
+            final boolean join = m.group(1) != null;
+            final List<String> lines = new ArrayList<>();
+            int pos = skipWhitespace(content, m.end());
+            final int start = pos;
+            int end = -1;
+            while (pos < content.length() && content.charAt(pos) == '\'') {
+                final int literalEnd = getLiteralEnd(content, pos);
+                if (literalEnd < 0) {
+                    break;
+                }
+                lines.add(content.substring(pos + 1, literalEnd - 1).replace("''", "'"));
+                end = literalEnd;
+                pos = skipWhitespace(content, literalEnd);
+                if (!join || pos >= content.length() || content.charAt(pos) != ',') {
+                    break;
+                }
+                pos = skipWhitespace(content, pos + 1);
+            }
+            if (end < 0 || join && !content.startsWith("))", pos)
+                    || !join && !content.startsWith(",", pos) && !content.startsWith(")", pos)) {
+                // e.g. an expression concatenating literals
+                continue;
+            }
+            regions.add(new SqlRegion(start, end, String.join("\n", lines), formatted -> encode(formatted, join)));
+        }
+        return regions;
+    }
+
+    private static int skipWhitespace(String content, int pos) {
+        int i = pos;
+        while (i < content.length() && Character.isWhitespace(content.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position after the string literal starting at pos, or -1 if the literal is not terminated.
+     */
+    private static int getLiteralEnd(String content, int pos) {
+        int i = pos + 1;
+        while (i < content.length()) {
+            if (content.charAt(i) == '\'') {
+                if (i + 1 < content.length() && content.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static String encode(String formatted, boolean join) {
+        if (!join) {
+            return "'" + formatted.replace("'", "''") + "'";
+        }
+        final StringBuilder sb = new StringBuilder(formatted.length() + 64);
+        final String[] lines = formatted.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                sb.append(",\n");
+            }
+            sb.append('\'').append(lines[i].replace("'", "''")).append('\'');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,263 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import oracle.dbtools.app.Format;
+
+/**
+ * Profiles the named rules of an Arbori program: evaluation time, cardinality, JavaScript callback invocations
+ * and allocated bytes per input.
+ * <p>
+ * The Arbori program is instrumented with runOnce rules recording an event before and after every named rule.
+ * JavaScript callbacks are wrapped to record their invocations. Rules without JavaScript callback get an
+ * additional rule counting their tuples. The events are collected in a list stored in the formatter options
+ * under {@link #EVENTS_OPTION}. The instrumented program produces the same result as the original program.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class ArboriProfiler implements AutoCloseable {
+    public static final String EVENTS_OPTION = "tvdformat.profile.events";
+    private static final String RULE_PREFIX = "tvdformat_profile_";
+    private static final String PRELUDE = RULE_PREFIX + "prelude: runOnce -> {\n"
+            + "  var profileEvents = struct.options.get(\"" + EVENTS_OPTION + "\");\n"
+            + "  var profileThreads = java.lang.management.ManagementFactory.getThreadMXBean();\n"
+            + "  var profileEvent = function(kind, rule, counted) {\n"
+            + "    if (profileEvents != null) {\n"
+            + "      var bytes = profileThreads.getThreadAllocatedBytes(java.lang.Thread.currentThread().getId());\n"
+            + "      profileEvents.add(Java.to([kind, rule, java.lang.System.nanoTime(), bytes, counted], \"java.lang.Object[]\"));\n"
+            + "    }\n"
+            + "  }\n"
+            + "}\n\n";
+    private final Path program;
+    private final FormatterSettings settings;
+    private Format formatter;
+
+    /**
+     * @param settings settings with an Arbori program file to be profiled
+     */
+    public ArboriProfiler(FormatterSettings settings) throws IOException {
+        if (FormatterSettings.DEFAULT.equals(settings.getArboriFileName())) {
+            throw new IllegalArgumentException("profiling requires an Arbori program file.");
+        }
+        final String original = new String(Files.readAllBytes(Paths.get(settings.getArboriFileName())), StandardCharsets.UTF_8);
+        program = Files.createTempFile("tvdformat-profile-", ".arbori");
+        Files.write(program, instrument(original).getBytes(StandardCharsets.UTF_8));
+        this.settings = new FormatterSettings(settings.getOptions(), program.toString());
+    }
+
+    /**
+     * @return the settings using the instrumented Arbori program
+     */
+    public FormatterSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Formats the content and returns the profile of every named rule.
+     *
+     * @param input name of the input in the profile, e.g. a file name
+     */
+    public List<RuleProfile> profile(String input, String content) throws IOException {
+        if (formatter == null) {
+            formatter = settings.newFormatter();
+        }
+        start(formatter);
+        try {
+            formatter.format(content);
+        } catch (IOException | RuntimeException e) {
+            stop(formatter, input);
+            throw e;
+        }
+        return stop(formatter, input);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(program);
+    }
+
+    /**
+     * Starts recording events of a formatter using the instrumented Arbori program.
+     */
+    public static void start(Format formatter) {
+        formatter.options.put(EVENTS_OPTION, new ArrayList<Object[]>());
+    }
+
+    /**
+     * Stops recording events of a formatter and returns the profile of all format calls since start.
+     *
+     * @param input name of the input in the profile, e.g. a file name
+     */
+    @SuppressWarnings("unchecked")
+    public static List<RuleProfile> stop(Format formatter, String input) {
+        final List<Object[]> events = (List<Object[]>) formatter.options.remove(EVENTS_OPTION);
+        return aggregate(input, events == null ? new ArrayList<>() : events);
+    }
+
+    /**
+     * Aggregates the events recorded by the instrumented Arbori program.
+     * An event consists of kind (start, end, enter, exit, tuple), rule name, System.nanoTime(),
+     * allocated bytes of the current thread and how tuples are counted (callback, tuple, none).
+     */
+    public static List<RuleProfile> aggregate(String input, List<Object[]> events) {
+        final Map<String, long[]> rules = new LinkedHashMap<>();
+        final Map<String, String> counted = new LinkedHashMap<>();
+        long startNanos = 0;
+        long startBytes = 0;
+        long startCallbackNanos = 0;
+        long enterNanos = 0;
+        for (Object[] event : events) {
+            final String kind = event[0].toString();
+            final String rule = event[1].toString();
+            final long nanos = ((Number) event[2]).longValue();
+            final long bytes = ((Number) event[3]).longValue();
+            // evalNanos, tuples, callbacks, callbackNanos, allocatedBytes
+            final long[] values = rules.computeIfAbsent(rule, k -> new long[5]);
+            switch (kind) {
+                case "start":
+                    counted.put(rule, event[4].toString());
+                    startNanos = nanos;
+                    startBytes = bytes;
+                    startCallbackNanos = values[3];
+                    break;
+                case "end":
+                    values[0] += nanos - startNanos - (values[3] - startCallbackNanos);
+                    values[4] += bytes - startBytes;
+                    break;
+                case "enter":
+                    enterNanos = nanos;
+                    break;
+                case "exit":
+                    values[2]++;
+                    values[3] += nanos - enterNanos;
+                    break;
+                case "tuple":
+                    values[1]++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown profile event " + kind + ".");
+            }
+        }
+        final List<RuleProfile> result = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : rules.entrySet()) {
+            final long[] values = entry.getValue();
+            final String counting = counted.get(entry.getKey());
+            final long tuples = "callback".equals(counting) ? values[2] : "tuple".equals(counting) ? values[1] : -1;
+            result.add(new RuleProfile(input, entry.getKey(), values[0], tuples, values[2], values[3], values[4]));
+        }
+        return result;
+    }
+
+    public static String toCsv(List<RuleProfile> profiles) {
+        final StringBuilder sb = new StringBuilder("input,rule,eval_ms,tuples,callbacks,callback_ms,allocated_bytes\n");
+        for (RuleProfile p : profiles) {
+            sb.append(csvValue(p.getInput())).append(',')
+                    .append(csvValue(p.getRule())).append(',')
+                    .append(millis(p.getEvalNanos())).append(',')
+                    .append(p.getTuples() < 0 ? "" : Long.toString(p.getTuples())).append(',')
+                    .append(p.getCallbacks()).append(',')
+                    .append(millis(p.getCallbackNanos())).append(',')
+                    .append(p.getAllocatedBytes()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static String toJson(List<RuleProfile> profiles) {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < profiles.size(); i++) {
+            final RuleProfile p = profiles.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("  {\"input\": ").append(jsonValue(p.getInput()))
+                    .append(", \"rule\": ").append(jsonValue(p.getRule()))
+                    .append(", \"evalMillis\": ").append(millis(p.getEvalNanos()))
+                    .append(", \"tuples\": ").append(p.getTuples() < 0 ? "null" : Long.toString(p.getTuples()))
+                    .append(", \"callbacks\": ").append(p.getCallbacks())
+                    .append(", \"callbackMillis\": ").append(millis(p.getCallbackNanos()))
+                    .append(", \"allocatedBytes\": ").append(p.getAllocatedBytes()).append('}');
+        }
+        return sb.append("\n]\n").toString();
+    }
+
+    /**
+     * Writes the profiles as JSON if the file name ends with .json, otherwise as CSV.
+     */
+    public static void write(Path file, List<RuleProfile> profiles) throws IOException {
+        final String content = file.toString().toLowerCase().endsWith(".json") ? toJson(profiles) : toCsv(profiles);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+    }
+
+    private static String csvValue(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static String jsonValue(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private static String jsString(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Returns the Arbori program instrumented for profiling.
+     *
+     * @throws IllegalArgumentException if the program cannot be split into rules
+     */
+    public static String instrument(String program) {
+        final StringBuilder sb = new StringBuilder(program.length() * 2);
+        final String nl = program.contains("\r\n") ? "\r\n" : "\n";
+        int pos = 0;
+        int ruleNo = 0;
+        for (ArboriProgram.Element element : ArboriProgram.parse(program)) {
+            if (element.isInclude()) {
+                continue;
+            }
+            final int ruleStart = element.getStart();
+            final int bodyStart = element.getBodyStart();
+            final int end = element.getEnd();
+            final String name = element.getName();
+            final String rule = jsString(element.getRuleName());
+            final String counting = element.hasJavaScript() ? "callback" : element.isQuotedName() ? "none" : "tuple";
+            sb.append(program, pos, ruleStart);
+            if (ruleNo == 0) {
+                sb.append(PRELUDE.replace("\n", nl));
+            }
+            sb.append(RULE_PREFIX).append(ruleNo).append("_start: runOnce -> { profileEvent(\"start\", ")
+                    .append(rule).append(", \"").append(counting).append("\"); }").append(nl);
+            if (bodyStart >= 0) {
+                sb.append(program, ruleStart, bodyStart + 1);
+                sb.append(" profileEvent(\"enter\", ").append(rule).append(");").append(nl);
+                sb.append(program, bodyStart + 1, end - 1);
+                sb.append(nl).append("  profileEvent(\"exit\", ").append(rule).append(");").append(nl).append('}');
+            } else {
+                sb.append(program, ruleStart, end);
+            }
+            sb.append(nl).append(RULE_PREFIX).append(ruleNo).append("_end: runOnce -> { profileEvent(\"end\", ")
+                    .append(rule).append("); }");
+            if ("tuple".equals(counting)) {
+                sb.append(nl).append(RULE_PREFIX).append(ruleNo).append("_tuples: ").append(name)
+                        .append(" -> { profileEvent(\"tuple\", ").append(rule).append("); }");
+            }
+            pos = end;
+            ruleNo++;
+        }
+        sb.append(program, pos, program.length());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,272 @@
+package com.trivadis.plsql.formatter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an Arbori program into includes and named rules. Used by {@link ArboriProfiler} and
+ * {@link ArboriSpecializer}. Comments and whitespace between the elements are not part of an element.
+ */
+final class ArboriProgram {
+
+    private ArboriProgram() {
+    }
+
+    /**
+     * An include or a named rule with its predicate and optional callback.
+     */
+    static final class Element {
+        private final int start;
+        private final int end;
+        private final String include;
+        private final String name;
+        private final int predicateStart;
+        private final int predicateEnd;
+        private final int bodyStart;
+
+        private Element(int start, int end, String include, String name, int predicateStart, int predicateEnd,
+                int bodyStart) {
+            this.start = start;
+            this.end = end;
+            this.include = include;
+            this.name = name;
+            this.predicateStart = predicateStart;
+            this.predicateEnd = predicateEnd;
+            this.bodyStart = bodyStart;
+        }
+
+        /**
+         * @return the position of the include keyword or the rule name
+         */
+        int getStart() {
+            return start;
+        }
+
+        /**
+         * @return the position after the included file name, the semicolon or the JavaScript block
+         */
+        int getEnd() {
+            return end;
+        }
+
+        boolean isInclude() {
+            return include != null;
+        }
+
+        /**
+         * @return the name of the included file (without quotes) or null for a rule
+         */
+        String getInclude() {
+            return include;
+        }
+
+        /**
+         * @return the rule name as written in the program, e.g. with quotes
+         */
+        String getName() {
+            return name;
+        }
+
+        boolean isQuotedName() {
+            return name != null && name.startsWith("\"");
+        }
+
+        /**
+         * @return the rule name without quotes
+         */
+        String getRuleName() {
+            return isQuotedName() ? name.substring(1, name.length() - 1) : name;
+        }
+
+        /**
+         * @return the position after the colon
+         */
+        int getPredicateStart() {
+            return predicateStart;
+        }
+
+        /**
+         * @return the position of the semicolon or the arrow
+         */
+        int getPredicateEnd() {
+            return predicateEnd;
+        }
+
+        /**
+         * @return the position of the opening brace of the JavaScript callback or -1
+         */
+        int getBodyStart() {
+            return bodyStart;
+        }
+
+        boolean hasJavaScript() {
+            return bodyStart >= 0;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the program cannot be split into rules
+     */
+    static List<Element> parse(String program) {
+        final List<Element> result = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            final int start = skipTrivia(program, pos);
+            if (start >= program.length()) {
+                break;
+            }
+            if (program.startsWith("include", start)) {
+                final int nameStart = skipTrivia(program, start + "include".length());
+                final int end = skipQuoted(program, nameStart);
+                result.add(new Element(start, end, program.substring(nameStart + 1, end - 1), null, -1, -1, -1));
+                pos = end;
+                continue;
+            }
+            final int nameEnd = scanName(program, start);
+            final int colon = skipTrivia(program, nameEnd);
+            if (nameEnd == start || colon >= program.length() || program.charAt(colon) != ':') {
+                throw unexpected(program, start);
+            }
+            int i = colon + 1;
+            int predicateEnd;
+            int bodyStart = -1;
+            int end;
+            while (true) {
+                i = skipTrivia(program, i);
+                if (i >= program.length()) {
+                    throw unexpected(program, start);
+                }
+                final char c = program.charAt(i);
+                if (c == '\'' || c == '"') {
+                    i = skipQuoted(program, i);
+                } else if (c == ';') {
+                    predicateEnd = i;
+                    end = i + 1;
+                    break;
+                } else if (program.startsWith("->", i)) {
+                    predicateEnd = i;
+                    i = skipTrivia(program, i + 2);
+                    if (i < program.length() && program.charAt(i) == ';') {
+                        end = i + 1;
+                    } else if (i < program.length() && program.charAt(i) == '{') {
+                        bodyStart = i;
+                        end = skipJavaScriptBlock(program, i);
+                    } else {
+                        throw unexpected(program, i);
+                    }
+                    break;
+                } else {
+                    i++;
+                }
+            }
+            result.add(new Element(start, end, null, program.substring(start, nameEnd), colon + 1, predicateEnd,
+                    bodyStart));
+            pos = end;
+        }
+        return result;
+    }
+
+    static IllegalArgumentException unexpected(String program, int pos) {
+        int line = 1;
+        for (int i = 0; i < pos && i < program.length(); i++) {
+            if (program.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return new IllegalArgumentException("unexpected Arbori syntax at line " + line + ".");
+    }
+
+    /**
+     * Skips whitespace and comments, returns the position of the next token.
+     */
+    static int skipTrivia(String program, int pos) {
+        int i = pos;
+        while (i < program.length()) {
+            if (Character.isWhitespace(program.charAt(i))) {
+                i++;
+            } else if (program.startsWith("--", i)) {
+                final int eol = program.indexOf('\n', i);
+                i = eol < 0 ? program.length() : eol + 1;
+            } else if (program.startsWith("/*", i)) {
+                final int end = program.indexOf("*/", i + 2);
+                i = end < 0 ? program.length() : end + 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position after a quoted name or symbol, doubled quotes are part of the content.
+     */
+    static int skipQuoted(String program, int pos) {
+        if (pos >= program.length() || program.charAt(pos) != '"' && program.charAt(pos) != '\'') {
+            throw unexpected(program, pos);
+        }
+        final char quote = program.charAt(pos);
+        int i = pos + 1;
+        while (i < program.length()) {
+            if (program.charAt(i) == quote) {
+                if (i + 1 < program.length() && program.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        throw unexpected(program, pos);
+    }
+
+    static int scanName(String program, int pos) {
+        if (pos < program.length() && program.charAt(pos) == '"') {
+            return skipQuoted(program, pos);
+        }
+        int i = pos;
+        while (i < program.length() && isNameChar(program.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+    }
+
+    /**
+     * Returns the position after the JavaScript block starting at pos, considering strings and comments.
+     */
+    static int skipJavaScriptBlock(String program, int pos) {
+        int depth = 0;
+        int i = pos;
+        while (i < program.length()) {
+            final char c = program.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < program.length() && program.charAt(i) != c && program.charAt(i) != '\n') {
+                    if (program.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+            } else if (program.startsWith("//", i)) {
+                final int eol = program.indexOf('\n', i);
+                i = eol < 0 ? program.length() : eol;
+                continue;
+            } else if (program.startsWith("/*", i)) {
+                final int end = program.indexOf("*/", i + 2);
+                i = end < 0 ? program.length() : end + 1;
+            }
+            i++;
+        }
+        throw unexpected(program, pos);
+    }
+}
@@ -0,0 +1,645 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import oracle.dbtools.app.Format;
+
+/**
+ * Specializes an Arbori program for a fixed set of formatter options. The result is a flat program producing
+ * the same formatting result for these options:
+ * <ul>
+ * <li>includes are inlined, if the included file is found</li>
+ * <li>option binds (e.g. :breaksBeforeComma) are replaced by their value and the predicates are simplified</li>
+ * <li>references to empty relations (e.g. false) are folded</li>
+ * <li>rules with a JavaScript callback and an empty relation are removed, when they are not referenced</li>
+ * </ul>
+ * Rules without JavaScript callback are kept, since SQLcl might access them by name. Predicates with constructs
+ * not understood by the specializer (e.g. set difference or projections) are kept as they are. JavaScript
+ * conditions such as .breaksProcArgs are evaluated at runtime and are not folded.
+ * <p>
+ * A specialized program must not be used with other options, e.g. when options of a Format instance are
+ * changed after configuration. The folded option values are recorded in a header of the specialized program,
+ * see {@link #checkOptions(String, Function)}.
+ */
+public class ArboriSpecializer {
+    private static final int ATOM = 0;
+    private static final int BIND = 1;
+    private static final int NOT = 2;
+    private static final int AND = 3;
+    private static final int OR = 4;
+    private static final int PAREN = 5;
+    private static final String HEADER = "-- specialized Arbori program, use it with the following option values only";
+    private static final String OPTION_PREFIX = "-- :";
+
+    private final String program;
+    private final Function<String, Boolean> binds;
+    private final List<ArboriProgram.Element> rules = new ArrayList<>();
+    private final Map<ArboriProgram.Element, Node> predicates = new HashMap<>();
+
+    private ArboriSpecializer(String program, Function<String, Boolean> binds) {
+        this.program = program;
+        this.binds = binds;
+        for (ArboriProgram.Element element : ArboriProgram.parse(program)) {
+            if (!element.isInclude()) {
+                rules.add(element);
+                predicates.put(element,
+                        parsePredicate(program, element.getPredicateStart(), element.getPredicateEnd()));
+            }
+        }
+    }
+
+    /**
+     * Specializes an Arbori program for the options of the settings. Included files are searched in the
+     * directory of the Arbori program and in the include directories. Includes not found are kept.
+     *
+     * @param settings settings with an Arbori program file
+     * @param includeDirs additional directories containing included files, e.g. std.arbori
+     */
+    public static String specialize(FormatterSettings settings, Path... includeDirs) throws IOException {
+        if (FormatterSettings.DEFAULT.equals(settings.getArboriFileName())) {
+            throw new IllegalArgumentException("specialization requires an Arbori program file.");
+        }
+        final Path file = Paths.get(settings.getArboriFileName());
+        final List<Path> dirs = new ArrayList<>();
+        dirs.add(file.toAbsolutePath().getParent());
+        dirs.addAll(Arrays.asList(includeDirs));
+        final Format formatter = settings.newFormatter();
+        final Map<String, Boolean> folded = new TreeMap<>();
+        final String specialized = specialize(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), name -> {
+            for (Path dir : dirs) {
+                final Path include = dir.resolve(name);
+                if (Files.isRegularFile(include)) {
+                    try {
+                        return new String(Files.readAllBytes(include), StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("cannot read include file " + include + ".", e);
+                    }
+                }
+            }
+            return null;
+        }, name -> {
+            try {
+                final boolean value = formatter.getBoolBind(name);
+                folded.put(name, value);
+                return value;
+            } catch (RuntimeException e) {
+                return null;
+            }
+        });
+        return withOptionsHeader(specialized, folded);
+    }
+
+    /**
+     * Returns the specialized Arbori program.
+     *
+     * @param includes returns the content of an included file or null to keep the include
+     * @param binds returns the value of an option bind or null to keep the bind
+     * @throws IllegalArgumentException if the program cannot be split into rules
+     */
+    public static String specialize(String program, Function<String, String> includes,
+            Function<String, Boolean> binds) {
+        return new ArboriSpecializer(inline(program, includes, new HashSet<>()), binds).specialize();
+    }
+
+    /**
+     * Returns the program with a header recording the folded option values.
+     */
+    public static String withOptionsHeader(String program, Map<String, Boolean> options) {
+        final String nl = program.contains("\r\n") ? "\r\n" : "\n";
+        final StringBuilder sb = new StringBuilder(program.length() + 64 * (options.size() + 1));
+        sb.append(HEADER).append(nl);
+        for (Map.Entry<String, Boolean> entry : options.entrySet()) {
+            sb.append(OPTION_PREFIX).append(entry.getKey()).append(" = ").append(entry.getValue()).append(nl);
+        }
+        return sb.append(nl).append(program).toString();
+    }
+
+    /**
+     * @return the option values recorded in the header of a specialized program, null for other programs
+     */
+    public static Map<String, Boolean> getFoldedOptions(String program) {
+        final String[] lines = program.split("\r?\n");
+        if (lines.length == 0 || !HEADER.equals(lines[0])) {
+            return null;
+        }
+        final Map<String, Boolean> result = new TreeMap<>();
+        for (int i = 1; i < lines.length && lines[i].startsWith(OPTION_PREFIX); i++) {
+            final String[] option = lines[i].substring(OPTION_PREFIX.length()).split(" = ");
+            if (option.length != 2 || !option[1].matches("true|false")) {
+                throw new IllegalArgumentException("invalid option in header of specialized Arbori program: "
+                        + lines[i] + ".");
+            }
+            result.put(option[0], Boolean.valueOf(option[1]));
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the options match the option values a specialized program was folded for.
+     * Other programs are accepted with any options.
+     *
+     * @param binds returns the value of an option bind
+     * @throws IllegalArgumentException if an option value differs
+     */
+    public static void checkOptions(String program, Function<String, Boolean> binds) {
+        final Map<String, Boolean> folded = getFoldedOptions(program);
+        if (folded == null) {
+            return;
+        }
+        for (Map.Entry<String, Boolean> entry : folded.entrySet()) {
+            final Boolean value = binds.apply(entry.getKey());
+            if (!entry.getValue().equals(value)) {
+                throw new IllegalArgumentException("Arbori program specialized for :" + entry.getKey() + " = "
+                        + entry.getValue() + ", but the option is " + value + ".");
+            }
+        }
+    }
+
+    private static String inline(String program, Function<String, String> includes, Set<String> active) {
+        final StringBuilder sb = new StringBuilder(program.length());
+        int pos = 0;
+        for (ArboriProgram.Element element : ArboriProgram.parse(program)) {
+            if (element.isInclude()) {
+                final String name = element.getInclude();
+                if (active.contains(name)) {
+                    throw new IllegalArgumentException("recursive include of " + name + ".");
+                }
+                final String content = includes.apply(name);
+                if (content != null) {
+                    sb.append(program, pos, element.getStart());
+                    active.add(name);
+                    sb.append(inline(content, includes, active));
+                    active.remove(name);
+                    pos = element.getEnd();
+                }
+            }
+        }
+        return sb.append(program, pos, program.length()).toString();
+    }
+
+    private String specialize() {
+        final Set<String> pinned = new HashSet<>();
+        while (true) {
+            final Map<ArboriProgram.Element, Result> results = fold();
+            final Set<ArboriProgram.Element> removed = new HashSet<>();
+            for (ArboriProgram.Element rule : rules) {
+                final Result result = results.get(rule);
+                if (result != null && result.state == Result.FALSE && rule.hasJavaScript()
+                        && !pinned.contains(rule.getName())) {
+                    removed.add(rule);
+                }
+            }
+            final String specialized = emit(results, removed);
+            // a removed rule might still be referenced by a predicate that could not be folded
+            final Set<String> referenced = referencedNames(specialized);
+            boolean changed = false;
+            for (ArboriProgram.Element rule : removed) {
+                if (referenced.contains(rule.getName())) {
+                    changed |= pinned.add(rule.getName());
+                }
+            }
+            if (!changed) {
+                return specialized;
+            }
+        }
+    }
+
+    /**
+     * Folds all predicates until no further relation becomes empty.
+     */
+    private Map<ArboriProgram.Element, Result> fold() {
+        final Set<String> empty = new HashSet<>();
+        for (ArboriProgram.Element rule : rules) {
+            final String predicate = program.substring(rule.getPredicateStart(), rule.getPredicateEnd()).trim();
+            if ("[]".equals(predicate)) {
+                empty.add(rule.getName());
+            }
+        }
+        while (true) {
+            final Map<ArboriProgram.Element, Result> results = new HashMap<>();
+            boolean changed = false;
+            for (ArboriProgram.Element rule : rules) {
+                final Node predicate = predicates.get(rule);
+                if (predicate != null) {
+                    final Result result = fold(predicate, empty);
+                    results.put(rule, result);
+                    if (result.state == Result.FALSE) {
+                        changed |= empty.add(rule.getName());
+                    }
+                }
+            }
+            if (!changed) {
+                return results;
+            }
+        }
+    }
+
+    private String emit(Map<ArboriProgram.Element, Result> results, Set<ArboriProgram.Element> removed) {
+        final StringBuilder sb = new StringBuilder(program.length());
+        int pos = 0;
+        for (ArboriProgram.Element rule : rules) {
+            final Result result = results.get(rule);
+            if (removed.contains(rule)) {
+                sb.append(program, pos, rule.getStart());
+                pos = skipRestOfLine(rule.getEnd());
+            } else if (result != null && result.state == Result.EXPR && result.changed) {
+                final Node predicate = predicates.get(rule);
+                sb.append(program, pos, predicate.start);
+                sb.append(result.text);
+                pos = predicate.end;
+            }
+        }
+        return sb.append(program, pos, program.length()).toString();
+    }
+
+    private int skipRestOfLine(int pos) {
+        int i = pos;
+        while (i < program.length() && (program.charAt(i) == ' ' || program.charAt(i) == '\t'
+                || program.charAt(i) == '\r')) {
+            i++;
+        }
+        return i < program.length() && program.charAt(i) == '\n' ? i + 1 : pos;
+    }
+
+    /**
+     * Returns the names of all relations referenced in predicates.
+     */
+    private static Set<String> referencedNames(String program) {
+        final Set<String> result = new HashSet<>();
+        for (ArboriProgram.Element element : ArboriProgram.parse(program)) {
+            if (element.isInclude()) {
+                continue;
+            }
+            int i = element.getPredicateStart();
+            while (i < element.getPredicateEnd()) {
+                i = ArboriProgram.skipTrivia(program, i);
+                if (i >= element.getPredicateEnd()) {
+                    break;
+                }
+                final char c = program.charAt(i);
+                if (c == '\'') {
+                    i = ArboriProgram.skipQuoted(program, i);
+                } else if (c == ':' || c == '.') {
+                    // bind or JavaScript condition
+                    i = ArboriProgram.scanName(program, i + 1);
+                } else if (c == '"' || ArboriProgram.isNameChar(c)) {
+                    final int end = ArboriProgram.scanName(program, i);
+                    result.add(program.substring(i, end));
+                    i = end;
+                } else {
+                    i++;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Result fold(Node node, Set<String> empty) {
+        switch (node.kind) {
+            case BIND: {
+                final Boolean value = binds.apply(node.text);
+                if (value == null) {
+                    return Result.expr(program.substring(node.start, node.end), false);
+                }
+                return new Result(value ? Result.TRUE : Result.FALSE, true);
+            }
+            case ATOM:
+                if (empty.contains(node.text)) {
+                    return new Result(Result.FALSE, false);
+                }
+                return Result.expr(node.text, false);
+            case NOT: {
+                final Result child = fold(node.children.get(0), empty);
+                if (child.state == Result.TRUE) {
+                    return new Result(Result.FALSE, child.pure);
+                }
+                if (child.state == Result.FALSE) {
+                    // the complement of an empty relation with attributes depends on the other conjuncts
+                    return child.pure ? new Result(Result.TRUE, true) : Result.ABORTED;
+                }
+                if (child.state == Result.ABORT) {
+                    return Result.ABORTED;
+                }
+                if (!child.changed) {
+                    return Result.expr(program.substring(node.start, node.end), false);
+                }
+                return Result.expr(program.substring(node.start, node.children.get(0).start) + child.text, true);
+            }
+            case PAREN: {
+                final Node inner = node.children.get(0);
+                final Result child = fold(inner, empty);
+                if (child.state != Result.EXPR) {
+                    return child;
+                }
+                return Result.expr(program.substring(node.start, inner.start) + child.text
+                        + program.substring(inner.end, node.end), child.changed);
+            }
+            default:
+                return foldJunction(node, empty);
+        }
+    }
+
+    private Result foldJunction(Node node, Set<String> empty) {
+        final boolean and = node.kind == AND;
+        final int absorbing = and ? Result.FALSE : Result.TRUE;
+        final List<Result> children = new ArrayList<>();
+        boolean pure = true;
+        boolean absorbed = false;
+        for (Node child : node.children) {
+            final Result result = fold(child, empty);
+            if (result.state == Result.ABORT) {
+                return Result.ABORTED;
+            }
+            pure &= result.pure;
+            absorbed |= result.state == absorbing;
+            children.add(result);
+        }
+        if (absorbed) {
+            // a disjunction with a true branch would lose the attributes of the other branches
+            return and || pure ? new Result(absorbing, pure) : Result.ABORTED;
+        }
+        final StringBuilder sb = new StringBuilder();
+        boolean changed = false;
+        int previous = -1;
+        for (int i = 0; i < children.size(); i++) {
+            final Result result = children.get(i);
+            if (result.state != Result.EXPR) {
+                changed = true;
+                continue;
+            }
+            if (previous >= 0) {
+                // keeps the separator and trailing comments of the previous kept operand
+                sb.append(program, node.children.get(previous).end, node.children.get(previous + 1).start);
+            }
+            sb.append(result.text);
+            changed |= result.changed;
+            previous = i;
+        }
+        if (previous < 0) {
+            return new Result(and ? Result.TRUE : Result.FALSE, pure);
+        }
+        if (previous < children.size() - 1) {
+            // keeps trailing comments of the last kept operand
+            final int from = node.children.get(previous).end;
+            final String trivia = program.substring(from, ArboriProgram.skipTrivia(program, from));
+            if (trivia.contains("--") || trivia.contains("/*")) {
+                sb.append(trivia);
+            }
+        }
+        return changed ? Result.expr(sb.toString(), true)
+                : Result.expr(program.substring(node.start, node.end), false);
+    }
+
+    /**
+     * Folding result of a predicate node. Pure constants do not depend on any relation.
+     */
+    private static final class Result {
+        static final int EXPR = 0;
+        static final int TRUE = 1;
+        static final int FALSE = 2;
+        static final int ABORT = 3;
+        static final Result ABORTED = new Result(ABORT, false);
+        final int state;
+        final boolean pure;
+        final String text;
+        final boolean changed;
+
+        Result(int state, boolean pure) {
+            this(state, pure, null, true);
+        }
+
+        private Result(int state, boolean pure, String text, boolean changed) {
+            this.state = state;
+            this.pure = pure;
+            this.text = text;
+            this.changed = changed;
+        }
+
+        static Result expr(String text, boolean changed) {
+            return new Result(EXPR, false, text, changed);
+        }
+    }
+
+    /**
+     * Node of a predicate. Atoms are relations, conditions on nodes or JavaScript conditions.
+     */
+    private static final class Node {
+        final int kind;
+        final int start;
+        final int end;
+        final String text;
+        final List<Node> children;
+        final boolean difference;
+
+        Node(int kind, int start, int end, String text, List<Node> children, boolean difference) {
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.children = children;
+            this.difference = difference;
+        }
+    }
+
+    private static final class UnsupportedSyntax extends RuntimeException {
+        UnsupportedSyntax() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Returns the parsed predicate or null if it contains constructs which are not understood.
+     */
+    private static Node parsePredicate(String program, int start, int end) {
+        final PredicateParser parser = new PredicateParser(program, end);
+        try {
+            parser.pos = start;
+            final Node node = parser.parseOr();
+            if (parser.peek() < end) {
+                return null;
+            }
+            return node;
+        } catch (UnsupportedSyntax e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses predicates with the operators !, &amp;, | and parentheses. The precedence of other operators such as
+     * set difference is not considered, they are accepted only as the single operand of parentheses or the
+     * predicate.
+     */
+    private static final class PredicateParser {
+        private final String program;
+        private final int end;
+        private int pos;
+
+        PredicateParser(String program, int end) {
+            this.program = program;
+            this.end = end;
+        }
+
+        int peek() {
+            pos = Math.min(ArboriProgram.skipTrivia(program, pos), end);
+            return pos;
+        }
+
+        private boolean next(char c) {
+            return peek() < end && program.charAt(pos) == c;
+        }
+
+        Node parseOr() {
+            return parseJunction(OR, '|');
+        }
+
+        private Node parseAnd() {
+            return parseJunction(AND, '&');
+        }
+
+        private Node parseJunction(int kind, char operator) {
+            final List<Node> children = new ArrayList<>();
+            children.add(kind == OR ? parseAnd() : parseUnary());
+            while (next(operator)) {
+                pos++;
+                children.add(kind == OR ? parseAnd() : parseUnary());
+            }
+            if (children.size() == 1) {
+                return children.get(0);
+            }
+            checkOperands(children);
+            return new Node(kind, children.get(0).start, children.get(children.size() - 1).end, null, children,
+                    false);
+        }
+
+        private void checkOperands(List<Node> children) {
+            for (Node child : children) {
+                if (child.difference) {
+                    throw new UnsupportedSyntax();
+                }
+            }
+        }
+
+        private Node parseUnary() {
+            if (next('!')) {
+                final int start = pos;
+                pos++;
+                final Node child = parseUnary();
+                checkOperands(List.of(child));
+                return new Node(NOT, start, child.end, null, List.of(child), false);
+            }
+            return parsePrimary();
+        }
+
+        private Node parsePrimary() {
+            final int start = peek();
+            if (start >= end) {
+                throw new UnsupportedSyntax();
+            }
+            final char c = program.charAt(start);
+            if (c == '(') {
+                pos++;
+                final Node inner = parseOr();
+                if (!next(')')) {
+                    throw new UnsupportedSyntax();
+                }
+                pos++;
+                return new Node(PAREN, start, pos, null, List.of(inner), false);
+            }
+            if (c == ':' && start + 1 < end && ArboriProgram.isNameChar(program.charAt(start + 1))) {
+                pos = ArboriProgram.scanName(program, start + 1);
+                return new Node(BIND, start, pos, program.substring(start + 1, pos), null, false);
+            }
+            return parseAtom(start);
+        }
+
+        private Node parseAtom(int start) {
+            int i = start;
+            int atomEnd = start;
+            boolean minus = false;
+            boolean comparison = false;
+            while (i < end) {
+                final int next = ArboriProgram.skipTrivia(program, i);
+                if (next != i) {
+                    i = next;
+                    continue;
+                }
+                final char c = program.charAt(i);
+                if (c == '&' || c == '|' || c == ')') {
+                    break;
+                }
+                if (c == '!' || c == '(' || c == ':') {
+                    throw new UnsupportedSyntax();
+                }
+                if (c == '\'' || c == '"') {
+                    i = ArboriProgram.skipQuoted(program, i);
+                } else if (c == '[') {
+                    i = skipNodeCondition(i);
+                } else {
+                    minus |= c == '-';
+                    comparison |= c == '=' || c == '<' || c == '>';
+                    i++;
+                }
+                atomEnd = i;
+            }
+            if (atomEnd == start) {
+                throw new UnsupportedSyntax();
+            }
+            pos = atomEnd;
+            // a minus without comparison is a set difference, e.g. "ids" - "analytics"
+            return new Node(ATOM, start, atomEnd, program.substring(start, atomEnd), null, minus && !comparison);
+        }
+
+        /**
+         * Returns the position after a node condition such as [node) or [(node^^)+10 &lt; (node^^)) or [].
+         */
+        private int skipNodeCondition(int start) {
+            int depth = 0;
+            int i = start + 1;
+            while (i < end) {
+                final char c = program.charAt(i);
+                if (c == '\'' || c == '"') {
+                    i = ArboriProgram.skipQuoted(program, i);
+                    continue;
+                }
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && depth > 0) {
+                    depth--;
+                } else if (c == ')' || c == ']') {
+                    return i + 1;
+                }
+                i++;
+            }
+            throw new UnsupportedSyntax();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: ArboriSpecializer <xml> <arbori> <output> [include dir]...");
+            System.exit(1);
+        }
+        final FormatterSettings settings = FormatterSettings.of(
+                FormatterSettings.DEFAULT.equals(args[0]) ? null : Paths.get(args[0]), Paths.get(args[1]));
+        final Path[] includeDirs = new Path[args.length - 3];
+        for (int i = 3; i < args.length; i++) {
+            includeDirs[i - 3] = Paths.get(args[i]);
+        }
+        final Path output = Paths.get(args[2]);
+        Files.write(output, specialize(settings, includeDirs).getBytes(StandardCharsets.UTF_8));
+        System.out.println(output + "... done.");
+    }
+}
@@ -0,0 +1,314 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import oracle.dbtools.app.Format;
+import oracle.dbtools.parser.Lexer;
+import oracle.dbtools.parser.LexerToken;
+import oracle.dbtools.parser.Parsed;
+import oracle.dbtools.parser.plsql.SqlEarley;
+
+/**
+ * Formats strings and files with a fixed set of settings. Same behaviour as format.js.
+ * Each thread uses its own Format instance. The instance is acquired from the FormatterPool on first use
+ * and released when the batch formatter is closed, unless its thread is still formatting. A closed batch
+ * formatter must not be used anymore.
+ * Files are formatted in parallel when the number of threads is greater than one.
+ * Files are decoded with the passed charset, UTF-8 by default. A byte order mark and CRLF line endings are preserved.
+ * SQL code embedded in other file types is located by {@link SqlExtractor}s, markdown files by default.
+ * The regions of a file are formatted in parallel, too.
+ */
+public class BatchFormatter implements AutoCloseable {
+    public static final List<String> DEFAULT_MARKDOWN_EXTENSIONS = MarkdownExtractor.DEFAULT_EXTENSIONS;
+    private final FormatterSettings settings;
+    private final ThreadLocal<Format> formatters;
+    // formatters by thread, a formatter still in use by its thread must not be released
+    private final Map<Thread, Format> acquiredFormatters = new ConcurrentHashMap<>();
+    private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor;
+    private final Charset charset;
+    private final List<SqlExtractor> extractors;
+
+    public BatchFormatter(FormatterSettings settings) {
+        this(settings, 1);
+    }
+
+    public BatchFormatter(FormatterSettings settings, int threads) {
+        this(settings, threads, DEFAULT_MARKDOWN_EXTENSIONS);
+    }
+
+    public BatchFormatter(FormatterSettings settings, int threads, List<String> markdownExtensions) {
+        this(settings, threads, markdownExtensions, StandardCharsets.UTF_8);
+    }
+
+    public BatchFormatter(FormatterSettings settings, int threads, List<String> markdownExtensions, Charset charset) {
+        this(settings, threads, charset, List.of(new MarkdownExtractor(markdownExtensions)));
+    }
+
+    /**
+     * Creates a batch formatter using the passed extractors. The first extractor accepting a file is used.
+     * Files not accepted by any extractor are formatted as SQL code.
+     */
+    public BatchFormatter(FormatterSettings settings, int threads, Charset charset, List<SqlExtractor> extractors) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("invalid number of threads " + threads + ".");
+        }
+        this.settings = settings;
+        this.formatters = ThreadLocal.withInitial(this::acquireFormatter);
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads, this::newWorker) : null;
+        this.charset = charset;
+        this.extractors = List.copyOf(extractors);
+    }
+
+    private Thread newWorker(Runnable runnable) {
+        final Thread worker = Executors.defaultThreadFactory().newThread(runnable);
+        workers.add(worker);
+        return worker;
+    }
+
+    private Format acquireFormatter() {
+        final Format formatter = FormatterPool.acquire(settings);
+        acquiredFormatters.put(Thread.currentThread(), formatter);
+        return formatter;
+    }
+
+    public FormatterSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Returns the formatter of the current thread.
+     */
+    public Format getFormatter() {
+        return formatters.get();
+    }
+
+    /**
+     * Parses the content once for the syntax check and formatting.
+     */
+    private Parsed parse(String content) {
+        final List<LexerToken> tokens = Lexer.parse(content);
+        return new Parsed(content, tokens, SqlEarley.getInstance(), new String[] {"sql_statements"});
+    }
+
+    private boolean hasSyntaxError(Parsed parsed) {
+        return parsed.getSyntaxError() != null && parsed.getSyntaxError().getMessage() != null;
+    }
+
+    /**
+     * Parses the content again with a leading line break to get the correct line number in the message.
+     */
+    private String getSyntaxErrorMessage(String content) {
+        return parse("\n" + content).getSyntaxError().getDetailedMessage();
+    }
+
+    private String format(Parsed parsed) throws IOException {
+        return getFormatter().format(parsed);
+    }
+
+    /**
+     * Formats SQL code. Code with syntax errors is not formatted.
+     */
+    public FormatResult format(String content) throws IOException {
+        final long start = System.nanoTime();
+        final Parsed parsed = parse(content);
+        if (hasSyntaxError(parsed)) {
+            return new FormatResult(null, FormatResult.Status.SYNTAX_ERROR, content,
+                    getSyntaxErrorMessage(content), false, System.nanoTime() - start);
+        }
+        final String formatted = format(parsed);
+        return new FormatResult(null, FormatResult.Status.FORMATTED, formatted,
+                null, !content.equals(formatted), System.nanoTime() - start);
+    }
+
+    /**
+     * Formats SQL code blocks of a markdown document. Blocks with syntax errors are left unchanged.
+     */
+    public String formatMarkdown(String content) throws IOException {
+        return formatRegions(new MarkdownExtractor(), content);
+    }
+
+    /**
+     * Formats the SQL regions located by the extractor. Regions with syntax errors are left unchanged.
+     * Content outside of the regions is kept as is.
+     */
+    public String formatRegions(SqlExtractor extractor, String content) throws IOException {
+        final List<SqlRegion> regions = extractor.extract(content);
+        final List<FormatResult> results = formatRegions(regions);
+        final StringBuilder sb = new StringBuilder(content.length());
+        int pos = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            final SqlRegion region = regions.get(i);
+            final FormatResult result = results.get(i);
+            if (result.getStatus() == FormatResult.Status.FORMATTED && result.isChanged()) {
+                sb.append(content, pos, region.getStart());
+                sb.append(region.encode(result.getContent()));
+                pos = region.getEnd();
+            }
+        }
+        sb.append(content, pos, content.length());
+        return sb.toString();
+    }
+
+    private List<FormatResult> formatRegions(List<SqlRegion> regions) throws IOException {
+        final List<FutureTask<FormatResult>> tasks = new ArrayList<>(regions.size());
+        for (SqlRegion region : regions) {
+            final FutureTask<FormatResult> task = new FutureTask<>(() -> format(region.getSql()));
+            tasks.add(task);
+            if (executor != null && regions.size() > 1) {
+                executor.execute(task);
+            }
+        }
+        final List<FormatResult> results = new ArrayList<>(tasks.size());
+        for (FutureTask<FormatResult> task : tasks) {
+            // runs the task in the current thread, if not yet started by a worker; avoids deadlocks in a saturated pool
+            task.run();
+            results.add(getResult(task));
+        }
+        return results;
+    }
+
+    private FormatResult getResult(Future<FormatResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public boolean isMarkdownFile(Path file) {
+        return extractors.stream().anyMatch(e -> e instanceof MarkdownExtractor && e.accepts(file, ""));
+    }
+
+    /**
+     * Returns the first extractor accepting the file or null, if the file contains SQL code only.
+     */
+    public SqlExtractor getExtractor(Path file, String content) {
+        return extractors.stream().filter(e -> e.accepts(file, content)).findFirst().orElse(null);
+    }
+
+    /**
+     * Formats a file in place. Files with syntax errors and already formatted files are not written.
+     * Throws a CharacterCodingException if the file is not encoded in the charset of this batch formatter.
+     */
+    public FormatResult format(Path file) throws IOException {
+        final long start = System.nanoTime();
+        final SourceFile source = SourceFile.read(file, charset);
+        final String original = source.getContent();
+        final FormatResult.Status status;
+        final String result;
+        String syntaxErrorMessage = null;
+        final SqlExtractor extractor = getExtractor(file, original);
+        if (extractor != null) {
+            status = FormatResult.Status.FORMATTED;
+            result = formatRegions(extractor, original);
+        } else {
+            final Parsed parsed = parse(original);
+            if (hasSyntaxError(parsed)) {
+                status = FormatResult.Status.SYNTAX_ERROR;
+                result = original;
+                syntaxErrorMessage = getSyntaxErrorMessage(original);
+            } else {
+                status = FormatResult.Status.FORMATTED;
+                result = format(parsed);
+            }
+        }
+        final boolean changed = status == FormatResult.Status.FORMATTED && !original.equals(result);
+        if (changed) {
+            source.write(result);
+        }
+        return new FormatResult(file, status, result, syntaxErrorMessage, changed, System.nanoTime() - start);
+    }
+
+    /**
+     * Formats files in place. The results are returned in the order of the passed files.
+     * A file passed more than once (same normalized absolute path) is formatted once, its result is repeated.
+     * In parallel mode the largest files are submitted first.
+     */
+    public List<FormatResult> format(Collection<Path> files) throws IOException {
+        // first passed path per normalized path, a file must not be read and written by two tasks concurrently
+        final Map<Path, Path> unique = new LinkedHashMap<>();
+        for (Path file : files) {
+            unique.putIfAbsent(normalize(file), file);
+        }
+        final Map<Path, FormatResult> resultsByPath = new HashMap<>();
+        if (executor == null || unique.size() < 2) {
+            for (Map.Entry<Path, Path> entry : unique.entrySet()) {
+                resultsByPath.put(entry.getKey(), format(entry.getValue()));
+            }
+        } else {
+            final Map<Path, Long> sizes = new HashMap<>();
+            for (Path file : unique.keySet()) {
+                sizes.put(file, Files.size(file));
+            }
+            // largest files first, a large file at the end of the list would determine the elapsed time
+            final List<Path> schedule = new ArrayList<>(unique.keySet());
+            schedule.sort(Comparator.comparing(sizes::get, Comparator.reverseOrder()));
+            final Map<Path, Future<FormatResult>> submitted = new HashMap<>();
+            for (Path file : schedule) {
+                final Path passedFile = unique.get(file);
+                submitted.put(file, executor.submit(() -> format(passedFile)));
+            }
+            for (Path file : unique.keySet()) {
+                resultsByPath.put(file, getResult(submitted.get(file)));
+            }
+        }
+        final List<FormatResult> results = new ArrayList<>(files.size());
+        for (Path file : files) {
+            results.add(resultsByPath.get(normalize(file)));
+        }
+        return results;
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void close() {
+        boolean terminated = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                terminated = executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                terminated = false;
+                Thread.currentThread().interrupt();
+            }
+        }
+        formatters.remove();
+        final boolean workersTerminated = terminated;
+        acquiredFormatters.forEach((thread, formatter) -> {
+            // Format is not thread-safe, formatters of threads that might still be formatting are dropped
+            if (thread == Thread.currentThread() || !thread.isAlive() || workersTerminated && workers.contains(thread)) {
+                FormatterPool.release(settings, formatter);
+            }
+        });
+        acquiredFormatters.clear();
+    }
+}
@@ -0,0 +1,48 @@
+package com.trivadis.plsql.formatter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts SQL code from text blocks of Flyway Java migrations.
+ * Text blocks containing escape sequences are left unchanged.
+ */
+public class FlywayExtractor implements SqlExtractor {
+    private static final Pattern TEXT_BLOCK = Pattern.compile("\"\"\"[ \\t\\f]*\\n(.*?)\"\"\"", Pattern.DOTALL);
+
+    @Override
+    public String getName() {
+        return "flyway";
+    }
+
+    @Override
+    public boolean accepts(Path file, String content) {
+        return file.toString().toLowerCase().endsWith(".java") && content.contains("org.flywaydb");
+    }
+
+    @Override
+    public List<SqlRegion> extract(String content) {
+        final List<SqlRegion> regions = new ArrayList<>();
+        final Matcher m = TEXT_BLOCK.matcher(content);
+        while (m.find()) {
+            if (m.group(1).indexOf('\\') >= 0) {
+                continue;
+            }
+            int start = m.start(1);
+            int end = m.end(1);
+            while (start < end && Character.isWhitespace(content.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+                end--;
+            }
+            if (start < end) {
+                regions.add(SqlRegion.indented(content, start, end));
+            }
+        }
+        return regions;
+    }
+}
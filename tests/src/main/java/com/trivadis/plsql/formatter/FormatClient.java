@@ -0,0 +1,101 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Thin client for FormatServer. A client instance keeps its connection open until closed.
+ * Not thread-safe.
+ */
+public class FormatClient implements AutoCloseable {
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    public FormatClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new BufferedInputStream(socket.getInputStream());
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    private FormatProtocol.Message request(String command, String content) throws IOException {
+        FormatProtocol.write(out, command, content);
+        final FormatProtocol.Message response = FormatProtocol.read(in);
+        if (response == null) {
+            throw new IOException("connection closed by server.");
+        }
+        if (FormatProtocol.ERROR.equals(response.command)) {
+            throw new IOException(response.content);
+        }
+        return response;
+    }
+
+    /**
+     * Formats SQL code. Code with syntax errors is not formatted.
+     */
+    public FormatResult format(String content) throws IOException {
+        final long start = System.nanoTime();
+        final FormatProtocol.Message response = request(FormatProtocol.FORMAT, content);
+        if (FormatProtocol.SYNTAX_ERROR.equals(response.command)) {
+            return new FormatResult(null, FormatResult.Status.SYNTAX_ERROR, content, response.content,
+                    false, System.nanoTime() - start);
+        }
+        return new FormatResult(null, FormatResult.Status.FORMATTED, response.content, null,
+                !content.equals(response.content), System.nanoTime() - start);
+    }
+
+    public boolean ping() throws IOException {
+        return FormatProtocol.PONG.equals(request(FormatProtocol.PING, null).command);
+    }
+
+    /**
+     * Stops the server. The connection is closed afterwards.
+     *
+     * @param token shutdown token of the server, see FormatServer.getShutdownToken
+     */
+    public void shutdown(String token) throws IOException {
+        request(FormatProtocol.SHUTDOWN, token);
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * usage: FormatClient <port> <file>...
+     * Formats the files in place. Files are read and written in UTF-8. Files with syntax errors are left unchanged.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: FormatClient <port> <file>...");
+            System.exit(1);
+        }
+        try (FormatClient client = new FormatClient(Integer.parseInt(args[0]))) {
+            for (int i = 1; i < args.length; i++) {
+                final Path file = Paths.get(args[i]);
+                // same encoding as FormatProtocol, a byte order mark and CRLF line endings are preserved
+                final SourceFile source = SourceFile.read(file, StandardCharsets.UTF_8);
+                final FormatResult result = client.format(source.getContent());
+                if (result.getStatus() == FormatResult.Status.FORMATTED) {
+                    if (result.isChanged()) {
+                        source.write(result.getContent());
+                    }
+                    System.out.println(file + "... done.");
+                } else {
+                    System.out.println(file + "... " + result.getSyntaxErrorMessage() + "... skipped.");
+                }
+            }
+        }
+    }
+}
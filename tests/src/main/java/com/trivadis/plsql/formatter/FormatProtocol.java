@@ -0,0 +1,83 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format used by FormatServer and FormatClient.
+ * Every message consists of a header line "COMMAND LENGTH\n" followed by LENGTH bytes of UTF-8 encoded content.
+ * Requests: FORMAT (content to format), PING, SHUTDOWN (shutdown token of the server).
+ * Responses: FORMATTED (formatted content), SYNTAX_ERROR (detailed error message), ERROR (exception message), PONG, BYE.
+ */
+final class FormatProtocol {
+    static final String FORMAT = "FORMAT";
+    static final String PING = "PING";
+    static final String SHUTDOWN = "SHUTDOWN";
+    static final String FORMATTED = "FORMATTED";
+    static final String SYNTAX_ERROR = "SYNTAX_ERROR";
+    static final String ERROR = "ERROR";
+    static final String PONG = "PONG";
+    static final String BYE = "BYE";
+    private static final int MAX_HEADER_LENGTH = 100;
+    static final long MAX_CONTENT_LENGTH = 256L * 1024 * 1024;
+
+    static final class Message {
+        final String command;
+        final String content;
+
+        Message(String command, String content) {
+            this.command = command;
+            this.content = content;
+        }
+    }
+
+    private FormatProtocol() {
+        super();
+    }
+
+    static void write(OutputStream out, String command, String content) throws IOException {
+        final byte[] bytes = content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8);
+        out.write((command + " " + bytes.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    /**
+     * @return the next message or null if the stream is closed before the first byte of a message
+     */
+    static Message read(InputStream in) throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int b = in.read();
+        if (b == -1) {
+            return null;
+        }
+        while (b != '\n') {
+            if (b == -1) {
+                throw new EOFException("incomplete header.");
+            }
+            if (header.size() >= MAX_HEADER_LENGTH) {
+                throw new IOException("header too long.");
+            }
+            header.write(b);
+            b = in.read();
+        }
+        final String[] parts = header.toString(StandardCharsets.US_ASCII).split(" ");
+        if (parts.length != 2 || !parts[1].matches("[0-9]+")) {
+            throw new IOException("invalid header " + header.toString(StandardCharsets.US_ASCII) + ".");
+        }
+        // more than 18 digits might overflow a long
+        final long length = parts[1].length() > 18 ? Long.MAX_VALUE : Long.parseLong(parts[1]);
+        if (length > MAX_CONTENT_LENGTH) {
+            throw new IOException("content too long, maximum is " + MAX_CONTENT_LENGTH + " bytes.");
+        }
+        final byte[] bytes = in.readNBytes((int) length);
+        if (bytes.length < length) {
+            throw new EOFException("incomplete content.");
+        }
+        return new Message(parts[0], new String(bytes, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,71 @@
+package com.trivadis.plsql.formatter;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Result of formatting a string or a file.
+ */
+public final class FormatResult {
+    public enum Status {
+        FORMATTED,
+        SYNTAX_ERROR
+    }
+
+    private final Path file;
+    private final Status status;
+    private final String content;
+    private final String syntaxErrorMessage;
+    private final boolean changed;
+    private final long elapsedNanos;
+
+    FormatResult(Path file, Status status, String content, String syntaxErrorMessage, boolean changed, long elapsedNanos) {
+        this.file = file;
+        this.status = status;
+        this.content = content;
+        this.syntaxErrorMessage = syntaxErrorMessage;
+        this.changed = changed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the formatted file or null when a string was formatted
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the formatted content or the original content in case of a syntax error
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return the detailed syntax error message or null
+     */
+    public String getSyntaxErrorMessage() {
+        return syntaxErrorMessage;
+    }
+
+    /**
+     * @return true if the formatted content differs from the original content
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return (file == null ? "<string>" : file.toString()) + ": " + status + (changed ? "" : " (unchanged)") + " in " + getElapsed().toMillis() + " ms";
+    }
+}
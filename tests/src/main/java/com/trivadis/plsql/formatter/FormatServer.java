@@ -0,0 +1,267 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-running formatter accepting requests on the loopback interface (see FormatProtocol).
+ * Every handler thread keeps a configured and warmed-up Format instance. A connection may be used for
+ * any number of requests and occupies a handler thread until it is closed by the client.
+ * Connections beyond the number of handler threads are rejected with an ERROR response.
+ * A SHUTDOWN request must contain the shutdown token of the server, since any local process can connect.
+ */
+public class FormatServer implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(FormatServer.class.getName());
+    private static final String WARM_UP_SQL = "select * from dual where 1 = 1;";
+    private final BatchFormatter batchFormatter;
+    private final int threads;
+    private final ServerSocket serverSocket;
+    private final ExecutorService handlers;
+    private final Semaphore connections;
+    private final Thread acceptor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final String shutdownToken;
+
+    /**
+     * @param port TCP port on the loopback interface, 0 to use any free port
+     * @param threads number of connections handled concurrently, further connections are rejected
+     */
+    public FormatServer(FormatterSettings settings, int port, int threads) throws IOException {
+        this.batchFormatter = new BatchFormatter(settings);
+        this.threads = threads;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.handlers = Executors.newFixedThreadPool(threads);
+        this.connections = new Semaphore(threads);
+        this.acceptor = new Thread(this::accept, "tvdformat-acceptor");
+        this.acceptor.setDaemon(true);
+        final byte[] token = new byte[32];
+        new SecureRandom().nextBytes(token);
+        this.shutdownToken = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the random token a SHUTDOWN request must contain
+     */
+    public String getShutdownToken() {
+        return shutdownToken;
+    }
+
+    /**
+     * @return the file containing the shutdown token of the server listening on the port, see main
+     */
+    public static Path getShutdownTokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".tvdformat-server-" + port + ".token");
+    }
+
+    /**
+     * Writes the shutdown token to a new file readable only by the owner, if supported by the file system.
+     */
+    public void writeShutdownToken(Path file) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        Files.write(file, shutdownToken.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private boolean isShutdownToken(String token) {
+        return token != null && MessageDigest.isEqual(shutdownToken.getBytes(StandardCharsets.US_ASCII),
+                token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Creates and warms up the formatter of each handler thread and starts accepting connections.
+     */
+    public FormatServer start() throws InterruptedException {
+        final CountDownLatch warmedUp = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            handlers.execute(() -> {
+                try {
+                    batchFormatter.format(WARM_UP_SQL);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "warm-up failed.", e);
+                }
+                warmedUp.countDown();
+                try {
+                    // block this thread until all threads are warmed up
+                    warmedUp.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        warmedUp.await();
+        acceptor.start();
+        return this;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                if (connections.tryAcquire()) {
+                    handlers.execute(() -> {
+                        try {
+                            handle(socket);
+                        } finally {
+                            connections.release();
+                        }
+                    });
+                } else {
+                    // a waiting connection would hang until another client closes its connection
+                    final Thread rejector = new Thread(() -> reject(socket), "tvdformat-reject");
+                    rejector.setDaemon(true);
+                    rejector.start();
+                }
+            } catch (SocketException e) {
+                // server socket closed
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "accept failed.", e);
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            FormatProtocol.Message request = FormatProtocol.read(in);
+            while (request != null) {
+                switch (request.command) {
+                    case FormatProtocol.FORMAT:
+                        respond(out, request.content);
+                        break;
+                    case FormatProtocol.PING:
+                        FormatProtocol.write(out, FormatProtocol.PONG, null);
+                        break;
+                    case FormatProtocol.SHUTDOWN:
+                        if (!isShutdownToken(request.content)) {
+                            FormatProtocol.write(out, FormatProtocol.ERROR, "invalid shutdown token.");
+                            break;
+                        }
+                        FormatProtocol.write(out, FormatProtocol.BYE, null);
+                        new Thread(this::close, "tvdformat-shutdown").start();
+                        return;
+                    default:
+                        FormatProtocol.write(out, FormatProtocol.ERROR, "unknown command " + request.command + ".");
+                }
+                request = FormatProtocol.read(in);
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "connection closed.", e);
+        }
+    }
+
+    private void reject(Socket socket) {
+        try (socket) {
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            FormatProtocol.write(out, FormatProtocol.ERROR,
+                    "server busy, all " + threads + " connections in use.");
+            socket.shutdownOutput();
+            // wait for the client to close the connection, otherwise the response might be discarded
+            socket.setSoTimeout(1000);
+            final InputStream in = socket.getInputStream();
+            while (in.read() >= 0) {
+                // ignore requests
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "connection rejected.", e);
+        }
+    }
+
+    private void respond(OutputStream out, String content) throws IOException {
+        final FormatResult result;
+        try {
+            result = batchFormatter.format(content);
+        } catch (IOException | RuntimeException e) {
+            FormatProtocol.write(out, FormatProtocol.ERROR, e.getMessage());
+            return;
+        }
+        if (result.getStatus() == FormatResult.Status.SYNTAX_ERROR) {
+            FormatProtocol.write(out, FormatProtocol.SYNTAX_ERROR, result.getSyntaxErrorMessage());
+        } else {
+            FormatProtocol.write(out, FormatProtocol.FORMATTED, result.getContent());
+        }
+    }
+
+    /**
+     * Waits until the server is closed, e.g. by a SHUTDOWN request.
+     */
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "close failed.", e);
+        }
+        handlers.shutdownNow();
+        try {
+            handlers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        batchFormatter.close();
+        stopped.countDown();
+    }
+
+    /**
+     * usage: FormatServer <xml> <arbori> [port] [threads]
+     * Use "default" for xml or arbori to use the settings provided by SQLcl.
+     * The shutdown token is written to the file returned by getShutdownTokenFile and deleted on termination.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("usage: FormatServer <xml> <arbori> [port] [threads]");
+            System.out.println("threads is the maximum number of open connections, further connections are rejected.");
+            System.exit(1);
+        }
+        final FormatterSettings settings = FormatterSettings.of(
+                FormatterSettings.DEFAULT.equals(args[0]) ? null : Paths.get(args[0]),
+                FormatterSettings.DEFAULT.equals(args[1]) ? null : Paths.get(args[1]));
+        final int port = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        final int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        try (FormatServer server = new FormatServer(settings, port, threads)) {
+            final Path tokenFile = getShutdownTokenFile(server.getPort());
+            server.writeShutdownToken(tokenFile);
+            try {
+                server.start();
+                System.out.println("listening on port " + server.getPort() + ", shutdown token in " + tokenFile);
+                server.awaitTermination();
+            } finally {
+                Files.deleteIfExists(tokenFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import oracle.dbtools.app.Format;
+
+/**
+ * Process-wide pool of configured Format instances.
+ * A Format instance compiles the Arbori program (including std.arbori and the JavaScript callbacks) on first use.
+ * Format does not provide an API to share a compiled program between instances, therefore instances
+ * are reused. Idle instances are kept per settings and per version of the Arbori program (path, mtime
+ * and content hash). A changed Arbori program is compiled by a new instance, idle instances of the previous
+ * version are discarded. The number of idle instances is limited per settings and in total, since every
+ * instance keeps its compiled Arbori program.
+ */
+public final class FormatterPool {
+    public static final int MAX_IDLE_PER_KEY = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    public static final int MAX_IDLE = 4 * MAX_IDLE_PER_KEY;
+    private static final Map<Key, Deque<Format>> idleFormatters = new ConcurrentHashMap<>();
+    private static final Map<String, ArboriVersion> arboriVersions = new ConcurrentHashMap<>();
+
+    private static final class ArboriVersion {
+        private final long lastModified;
+        private final String hash;
+
+        private ArboriVersion(long lastModified, String hash) {
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private static final class Key {
+        private final Map<String, Object> options;
+        private final String arboriFileName;
+        private final long lastModified;
+        private final String hash;
+
+        private Key(FormatterSettings settings, ArboriVersion version) {
+            this.options = settings.getOptions();
+            this.arboriFileName = settings.getArboriFileName();
+            this.lastModified = version == null ? 0 : version.lastModified;
+            this.hash = version == null ? null : version.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return lastModified == other.lastModified && Objects.equals(hash, other.hash)
+                    && arboriFileName.equals(other.arboriFileName) && options.equals(other.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(arboriFileName, lastModified, hash, options);
+        }
+    }
+
+    private FormatterPool() {
+        super();
+    }
+
+    private static String getHash(byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ArboriVersion getArboriVersion(String arboriFileName) {
+        if (FormatterSettings.DEFAULT.equals(arboriFileName)) {
+            return null;
+        }
+        final Path file = Paths.get(arboriFileName);
+        try {
+            final long lastModified = Files.getLastModifiedTime(file).toMillis();
+            final ArboriVersion cached = arboriVersions.get(arboriFileName);
+            if (cached != null && cached.lastModified == lastModified) {
+                return cached;
+            }
+            final ArboriVersion version = new ArboriVersion(lastModified, getHash(Files.readAllBytes(file)));
+            arboriVersions.put(arboriFileName, version);
+            if (cached != null && !cached.hash.equals(version.hash)) {
+                // the program changed, formatters of the previous version must not be reused
+                idleFormatters.keySet().removeIf(k -> k.arboriFileName.equals(arboriFileName) && !version.hash.equals(k.hash));
+            }
+            return version;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns an idle formatter for the settings or a new one. The formatter must be released after use.
+     */
+    public static Format acquire(FormatterSettings settings) {
+        final Key key = new Key(settings, getArboriVersion(settings.getArboriFileName()));
+        final Deque<Format> idle = idleFormatters.get(key);
+        final Format formatter = idle == null ? null : idle.pollFirst();
+        return formatter == null ? settings.newFormatter() : formatter;
+    }
+
+    /**
+     * Resets the options of the formatter to the settings and makes it available for subsequent acquire calls.
+     * The formatter is discarded when the settings already have {@link #MAX_IDLE_PER_KEY} idle formatters.
+     * The least recently released formatter of other settings is discarded when the pool already has
+     * {@link #MAX_IDLE} idle formatters.
+     */
+    public static synchronized void release(FormatterSettings settings, Format formatter) {
+        settings.reset(formatter);
+        final Key key = new Key(settings, getArboriVersion(settings.getArboriFileName()));
+        final Deque<Format> idle = idleFormatters.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+        // acquire only removes formatters, the limits hold since release is synchronized
+        if (idle.size() >= MAX_IDLE_PER_KEY) {
+            return;
+        }
+        if (getIdleCount() >= MAX_IDLE && !evictOther(key)) {
+            return;
+        }
+        idle.offerFirst(formatter);
+    }
+
+    private static int getIdleCount() {
+        int count = 0;
+        for (Deque<Format> idle : idleFormatters.values()) {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    private static boolean evictOther(Key key) {
+        for (Map.Entry<Key, Deque<Format>> entry : idleFormatters.entrySet()) {
+            if (!entry.getKey().equals(key) && entry.getValue().pollLast() != null) {
+                if (entry.getValue().isEmpty()) {
+                    idleFormatters.remove(entry.getKey(), entry.getValue());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Discards all idle formatters.
+     */
+    public static void clear() {
+        idleFormatters.clear();
+        arboriVersions.clear();
+    }
+}
@@ -0,0 +1,111 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import oracle.dbtools.app.Format;
+import oracle.dbtools.app.Persist2XML;
+
+/**
+ * Formatter settings read once from an advanced format XML file and a custom format Arbori program.
+ * Used to configure any number of Format instances.
+ */
+public class FormatterSettings {
+    public static final String DEFAULT = "default";
+    private final Map<String, Object> options;
+    private final String arboriFileName;
+    private volatile Map<String, Object> configuredOptions;
+
+    public FormatterSettings(Map<String, Object> options, String arboriFileName) {
+        this.options = Collections.unmodifiableMap(new HashMap<>(options));
+        this.arboriFileName = arboriFileName == null ? DEFAULT : arboriFileName;
+    }
+
+    /**
+     * @param advancedFormat advanced format settings exported by SQL Developer, null to use the default settings
+     * @param arboriFileName path to the Arbori program, "default" to use the Arbori program provided by SQLcl
+     */
+    public static FormatterSettings of(URL advancedFormat, String arboriFileName) throws IOException {
+        final Map<String, Object> options = advancedFormat == null ? Collections.emptyMap() : Persist2XML.read(advancedFormat);
+        return new FormatterSettings(options, arboriFileName);
+    }
+
+    /**
+     * @param advancedFormat advanced format settings exported by SQL Developer, null to use the default settings
+     * @param customFormat Arbori program, null to use the Arbori program provided by SQLcl
+     */
+    public static FormatterSettings of(Path advancedFormat, Path customFormat) throws IOException {
+        return of(advancedFormat == null ? null : advancedFormat.toUri().toURL(),
+                customFormat == null ? DEFAULT : customFormat.toAbsolutePath().toString());
+    }
+
+    public static FormatterSettings defaults() {
+        return new FormatterSettings(Collections.emptyMap(), DEFAULT);
+    }
+
+    public Map<String, Object> getOptions() {
+        return options;
+    }
+
+    public String getArboriFileName() {
+        return arboriFileName;
+    }
+
+    /**
+     * Applies the settings to an existing formatter. Options changed since the last call are overridden.
+     */
+    public void configure(Format formatter) {
+        for (Map.Entry<String, Object> entry : options.entrySet()) {
+            formatter.options.put(entry.getKey(), entry.getValue());
+        }
+        formatter.options.put(formatter.formatProgramURL, arboriFileName);
+    }
+
+    /**
+     * Creates a new configured formatter. Format instances are not thread-safe.
+     *
+     * @throws IllegalArgumentException if the Arbori program was specialized for other options
+     */
+    public Format newFormatter() {
+        final Format formatter = new Format();
+        configure(formatter);
+        if (configuredOptions == null) {
+            checkSpecializedProgram(formatter);
+            configuredOptions = Collections.unmodifiableMap(new HashMap<>(formatter.options));
+        }
+        return formatter;
+    }
+
+    private void checkSpecializedProgram(Format formatter) {
+        if (DEFAULT.equals(arboriFileName) || !Files.isRegularFile(Paths.get(arboriFileName))) {
+            // a missing program is reported by the formatter
+            return;
+        }
+        try {
+            final String program = new String(Files.readAllBytes(Paths.get(arboriFileName)), StandardCharsets.UTF_8);
+            ArboriSpecializer.checkOptions(program, formatter::getBoolBind);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Restores all options of a formatter created by newFormatter(), including options not defined in the settings.
+     */
+    public void reset(Format formatter) {
+        if (configuredOptions == null) {
+            configure(formatter);
+        } else {
+            formatter.options.clear();
+            formatter.options.putAll(configuredOptions);
+        }
+    }
+}
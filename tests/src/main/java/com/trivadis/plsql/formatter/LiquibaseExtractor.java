@@ -0,0 +1,57 @@
+package com.trivadis.plsql.formatter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts SQL code from sql, createProcedure and createView elements of Liquibase XML changelogs.
+ * Elements containing markup or entities outside of a CDATA section are left unchanged.
+ */
+public class LiquibaseExtractor implements SqlExtractor {
+    private static final Pattern SQL_ELEMENT = Pattern.compile(
+            "<(sql|createProcedure|createView)(\\s[^>]*)?(?<!/)>(.*?)</\\1\\s*>", Pattern.DOTALL);
+    private static final Pattern CDATA = Pattern.compile("\\s*<!\\[CDATA\\[(.*?)]]>\\s*", Pattern.DOTALL);
+
+    @Override
+    public String getName() {
+        return "liquibase";
+    }
+
+    @Override
+    public boolean accepts(Path file, String content) {
+        return file.toString().toLowerCase().endsWith(".xml") && content.contains("<databaseChangeLog");
+    }
+
+    @Override
+    public List<SqlRegion> extract(String content) {
+        final List<SqlRegion> regions = new ArrayList<>();
+        final Matcher m = SQL_ELEMENT.matcher(content);
+        while (m.find()) {
+            int start = m.start(3);
+            int end = m.end(3);
+            final Matcher cdata = CDATA.matcher(content).region(start, end);
+            if (cdata.matches()) {
+                start = cdata.start(1);
+                end = cdata.end(1);
+            } else {
+                final String text = content.substring(start, end);
+                if (text.indexOf('<') >= 0 || text.indexOf('&') >= 0) {
+                    continue;
+                }
+            }
+            while (start < end && Character.isWhitespace(content.charAt(start))) {
+                start++;
+            }
+            while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+                end--;
+            }
+            if (start < end) {
+                regions.add(SqlRegion.indented(content, start, end));
+            }
+        }
+        return regions;
+    }
+}
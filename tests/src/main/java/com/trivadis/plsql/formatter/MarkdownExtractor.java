@@ -0,0 +1,45 @@
+package com.trivadis.plsql.formatter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts SQL code blocks from markdown files.
+ */
+public class MarkdownExtractor implements SqlExtractor {
+    public static final List<String> DEFAULT_EXTENSIONS = List.of(".markdown", ".mdown", ".mkdn", ".md");
+    private static final Pattern SQL_BLOCK = Pattern.compile("(```\\s*sql\\s*\\n)(.+?)(\\n```)", Pattern.DOTALL);
+    private final List<String> extensions;
+
+    public MarkdownExtractor() {
+        this(DEFAULT_EXTENSIONS);
+    }
+
+    public MarkdownExtractor(List<String> extensions) {
+        this.extensions = List.copyOf(extensions);
+    }
+
+    @Override
+    public String getName() {
+        return "markdown";
+    }
+
+    @Override
+    public boolean accepts(Path file, String content) {
+        final String name = file.toString().toLowerCase();
+        return extensions.stream().anyMatch(name::endsWith);
+    }
+
+    @Override
+    public List<SqlRegion> extract(String content) {
+        final List<SqlRegion> regions = new ArrayList<>();
+        final Matcher m = SQL_BLOCK.matcher(content);
+        while (m.find()) {
+            regions.add(SqlRegion.of(content, m.start(2), m.end(2)));
+        }
+        return regions;
+    }
+}
@@ -0,0 +1,68 @@
+package com.trivadis.plsql.formatter;
+
+import java.util.Locale;
+
+/**
+ * Profile of a named Arbori rule for an input, collected by {@link ArboriProfiler}.
+ * Evaluation time excludes the time spent in JavaScript callbacks. Allocated bytes include both.
+ */
+public final class RuleProfile {
+    private final String input;
+    private final String rule;
+    private final long evalNanos;
+    private final long tuples;
+    private final long callbacks;
+    private final long callbackNanos;
+    private final long allocatedBytes;
+
+    public RuleProfile(String input, String rule, long evalNanos, long tuples, long callbacks, long callbackNanos,
+            long allocatedBytes) {
+        this.input = input;
+        this.rule = rule;
+        this.evalNanos = evalNanos;
+        this.tuples = tuples;
+        this.callbacks = callbacks;
+        this.callbackNanos = callbackNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return the name of the profiled input, e.g. a file name
+     */
+    public String getInput() {
+        return input;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+
+    public long getEvalNanos() {
+        return evalNanos;
+    }
+
+    /**
+     * @return the cardinality of the rule or -1 if unknown (rules with a quoted name and without JavaScript callback)
+     */
+    public long getTuples() {
+        return tuples;
+    }
+
+    public long getCallbacks() {
+        return callbacks;
+    }
+
+    public long getCallbackNanos() {
+        return callbackNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %s eval %.3f ms (cardinality=%d), %d callbacks %.3f ms, %d bytes",
+                input, rule, evalNanos / 1000000.0, tuples, callbacks, callbackNanos / 1000000.0, allocatedBytes);
+    }
+}
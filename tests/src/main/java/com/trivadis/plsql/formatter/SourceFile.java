@@ -0,0 +1,139 @@
+package com.trivadis.plsql.formatter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Content of a source file decoded with a charset. The formatter works with LF line endings only.
+ * A byte order mark and CRLF line endings are removed when reading and restored when writing.
+ * Same behaviour as format.js.
+ */
+class SourceFile {
+    private static final char BOM = '\uFEFF';
+    private final Path file;
+    private final Charset charset;
+    private final String content;
+    private final boolean bom;
+    private final String lineSeparator;
+
+    private SourceFile(Path file, Charset charset, String content, boolean bom, String lineSeparator) {
+        this.file = file;
+        this.charset = charset;
+        this.content = content;
+        this.bom = bom;
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     * Reads a file. Throws a CharacterCodingException for bytes not valid in the charset.
+     */
+    static SourceFile read(Path file, Charset charset) throws IOException {
+        final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // the number of bytes is an upper bound for the number of chars in single and multi-byte charsets
+        final StringBuilder sb = new StringBuilder((int) Math.min(Files.size(file), Integer.MAX_VALUE - 8));
+        boolean bom = false;
+        String lineSeparator = null;
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file), decoder)) {
+            final char[] buffer = new char[65536];
+            boolean pendingCR = false;
+            int n = reader.read(buffer);
+            while (n != -1) {
+                for (int i = 0; i < n; i++) {
+                    final char c = buffer[i];
+                    if (pendingCR) {
+                        pendingCR = false;
+                        if (c == '\n') {
+                            // the first line ending determines the line endings of the formatted file
+                            if (lineSeparator == null) {
+                                lineSeparator = "\r\n";
+                            }
+                            if ("\r\n".equals(lineSeparator)) {
+                                sb.append('\n');
+                                continue;
+                            }
+                        }
+                        sb.append('\r');
+                    }
+                    if (c == '\r') {
+                        pendingCR = true;
+                    } else {
+                        if (c == '\n' && lineSeparator == null) {
+                            lineSeparator = "\n";
+                        }
+                        if (c == BOM && sb.length() == 0 && !bom) {
+                            bom = true;
+                        } else {
+                            sb.append(c);
+                        }
+                    }
+                }
+                n = reader.read(buffer);
+            }
+            if (pendingCR) {
+                sb.append('\r');
+            }
+        }
+        return new SourceFile(file, charset, sb.toString(), bom, lineSeparator == null ? "\n" : lineSeparator);
+    }
+
+    String getContent() {
+        return content;
+    }
+
+    /**
+     * Replaces the file via a temporary file in the same directory.
+     * An interrupted write never leaves a partially written file.
+     */
+    void write(String newContent) throws IOException {
+        final Path target = file.toRealPath();
+        final Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            if (target.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+            }
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp), charset))) {
+                if (bom) {
+                    writer.write(BOM);
+                }
+                writeText(writer, newContent);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private void writeText(Writer writer, String text) throws IOException {
+        if ("\n".equals(lineSeparator)) {
+            writer.write(text);
+        } else {
+            int pos = 0;
+            int lf = text.indexOf('\n');
+            while (lf >= 0) {
+                writer.write(text, pos, lf - pos);
+                writer.write(lineSeparator);
+                pos = lf + 1;
+                lf = text.indexOf('\n', pos);
+            }
+            writer.write(text, pos, text.length() - pos);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.trivadis.plsql.formatter;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Locates SQL code in files of a specific format, e.g. SQL code blocks in markdown files.
+ * Implementations are registered in META-INF/services/com.trivadis.plsql.formatter.SqlExtractor.
+ * Same behaviour as the extractors in format.js.
+ */
+public interface SqlExtractor {
+
+    /**
+     * Returns the name used to enable the extractor, e.g. "liquibase".
+     */
+    String getName();
+
+    /**
+     * Returns true if the extractor handles the file with the given content.
+     */
+    boolean accepts(Path file, String content);
+
+    /**
+     * Returns the SQL regions of the file content, ordered by start offset and not overlapping.
+     */
+    List<SqlRegion> extract(String content);
+
+    /**
+     * Returns the registered extractor with the given name.
+     */
+    static SqlExtractor load(String name) {
+        for (SqlExtractor extractor : ServiceLoader.load(SqlExtractor.class, SqlExtractor.class.getClassLoader())) {
+            if (extractor.getName().equalsIgnoreCase(name)) {
+                return extractor;
+            }
+        }
+        throw new IllegalArgumentException("unknown extractor " + name + ".");
+    }
+}
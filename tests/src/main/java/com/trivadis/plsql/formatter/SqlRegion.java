@@ -0,0 +1,82 @@
+package com.trivadis.plsql.formatter;
+
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A region of a file containing SQL code, located by a {@link SqlExtractor}.
+ * Start and end are offsets in the original file content. The SQL code is decoded, e.g. without the
+ * indentation of the surrounding file. The encoder converts the formatted SQL code back to the file format.
+ */
+public final class SqlRegion {
+    private static final Pattern INDENTED_LINE = Pattern.compile("\n(?=[^\n])");
+    private final int start;
+    private final int end;
+    private final String sql;
+    private final UnaryOperator<String> encoder;
+
+    public SqlRegion(int start, int end, String sql, UnaryOperator<String> encoder) {
+        this.start = start;
+        this.end = end;
+        this.sql = sql;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Creates a region containing SQL code as is.
+     */
+    public static SqlRegion of(String content, int start, int end) {
+        return new SqlRegion(start, end, content.substring(start, end), UnaryOperator.identity());
+    }
+
+    /**
+     * Creates a region for SQL code indented like the line containing start, e.g. in an XML element.
+     * The indentation is removed from all subsequent lines and added again to the formatted lines.
+     * The code is used as is, if a non-blank line does not start with this indentation.
+     */
+    public static SqlRegion indented(String content, int start, int end) {
+        final int lineStart = content.lastIndexOf('\n', start - 1) + 1;
+        int indentEnd = lineStart;
+        while (indentEnd < start && Character.isWhitespace(content.charAt(indentEnd))) {
+            indentEnd++;
+        }
+        final String indent = content.substring(lineStart, indentEnd);
+        final String[] lines = content.substring(start, end).split("\n", -1);
+        if (indent.isEmpty() || lines.length == 1) {
+            return of(content, start, end);
+        }
+        final StringBuilder sb = new StringBuilder(end - start);
+        sb.append(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            sb.append('\n');
+            if (lines[i].startsWith(indent)) {
+                sb.append(lines[i], indent.length(), lines[i].length());
+            } else if (!lines[i].isBlank() || lines[i].length() >= indent.length()) {
+                // e.g. a multiline string literal, must not be changed
+                return of(content, start, end);
+            }
+        }
+        final String replacement = Matcher.quoteReplacement("\n" + indent);
+        return new SqlRegion(start, end, sb.toString(), formatted -> INDENTED_LINE.matcher(formatted).replaceAll(replacement));
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Converts formatted SQL code to replace the region in the original file content.
+     */
+    public String encode(String formatted) {
+        return encoder.apply(formatted);
+    }
+}
@@ -0,0 +1,367 @@
+package com.trivadis.plsql.formatter.arbori;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import oracle.dbtools.parser.LexerToken;
+import oracle.dbtools.parser.Substitutions;
+import oracle.dbtools.parser.Token;
+
+/**
+ * Java implementation of the hot callbacks of trivadis_custom_format.arbori. The Arbori program uses this class
+ * via Java.type when it is on the classpath and falls back to the JavaScript implementation otherwise, e.g. in
+ * SQL Developer. Set the system property {@link #ENABLED_PROPERTY} to false to use the JavaScript implementation.
+ * <p>
+ * The methods compute positions or the changed input. The Arbori program applies them to the formatter.
+ * The paddings and indents of the prelude are cached per JVM and shared by all formatters, the JavaScript
+ * implementation builds them again on every run.
+ */
+public final class Actions {
+    public static final String ENABLED_PROPERTY = "tvdformat.javaActions";
+    private static final int MAX_CACHED_LENGTH = 256;
+    private static final int MAX_CACHED_BASE_INDENTS = 1024;
+    private static final String[] PADDINGS = new String[MAX_CACHED_LENGTH + 1];
+    // strings are immutable, a race results in an equal string computed twice
+    private static final Map<String, String[]> INDENTS = new ConcurrentHashMap<>();
+
+    static {
+        PADDINGS[0] = "";
+        for (int i = 1; i <= MAX_CACHED_LENGTH; i++) {
+            PADDINGS[i] = PADDINGS[i - 1] + " ";
+        }
+    }
+
+    private Actions() {
+    }
+
+    /**
+     * Tokens of an input including whitespace and comments, same as getTokenStream() in the Arbori program.
+     */
+    public static final class TokenStream {
+        private final String input;
+        private final LexerToken[] tokens;
+        // position in target.src (tokens without hidden tokens)
+        private final int[] positions;
+        private final boolean[] hidden;
+        // sorted, non-overlapping @formatter:off/on and NoFormat Start/End ranges, same as getOffOnRanges()
+        private final int[] offOnBegins;
+        private final int[] offOnEnds;
+
+        private TokenStream(String input) {
+            this.input = input;
+            final List<LexerToken> list = LexerToken.parse(input, true);
+            tokens = list.toArray(new LexerToken[0]);
+            positions = new int[tokens.length];
+            hidden = new boolean[tokens.length];
+            int[] begins = new int[4];
+            int[] ends = new int[4];
+            int ranges = 0;
+            int hiddenTokenCount = 0;
+            int off = -1;
+            for (int i = 0; i < tokens.length; i++) {
+                final Token type = tokens[i].type;
+                positions[i] = i - hiddenTokenCount;
+                hidden[i] = type == Token.LINE_COMMENT || type == Token.COMMENT || type == Token.WS
+                        || type == Token.MACRO_SKIP || type == Token.SQLPLUSLINECONTINUE_SKIP;
+                if (hidden[i]) {
+                    hiddenTokenCount++;
+                }
+                if (type == Token.LINE_COMMENT || type == Token.COMMENT) {
+                    final String content = tokens[i].content.toLowerCase();
+                    if (off == -1 && (content.contains("@formatter:off") || content.contains("noformat start"))) {
+                        off = tokens[i].begin;
+                    }
+                    if (off != -1 && (content.contains("@formatter:on") || content.contains("noformat end"))) {
+                        if (ranges == begins.length) {
+                            begins = Arrays.copyOf(begins, ranges * 2);
+                            ends = Arrays.copyOf(ends, ranges * 2);
+                        }
+                        begins[ranges] = off;
+                        ends[ranges] = tokens[i].end;
+                        ranges++;
+                        off = -1;
+                    }
+                }
+            }
+            if (off != -1) {
+                begins = Arrays.copyOf(begins, ranges + 1);
+                ends = Arrays.copyOf(ends, ranges + 1);
+                begins[ranges] = off;
+                ends[ranges] = input.length();
+                ranges++;
+            }
+            offOnBegins = Arrays.copyOf(begins, ranges);
+            offOnEnds = Arrays.copyOf(ends, ranges);
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        /**
+         * Binary search over the off/on ranges, pos is a character position in the input.
+         */
+        boolean inOffOnRange(int pos) {
+            int low = 0;
+            int high = offOnBegins.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (pos < offOnBegins[mid]) {
+                    high = mid - 1;
+                } else {
+                    if (pos < offOnEnds[mid]) {
+                        return true;
+                    }
+                    low = mid + 1;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static TokenStream tokenStream(String input) {
+        return new TokenStream(input);
+    }
+
+    /**
+     * Implementation of getPadding() in the prelude: len spaces.
+     */
+    public static String padding(int len) {
+        if (len <= 0) {
+            return "";
+        }
+        return len <= MAX_CACHED_LENGTH ? PADDINGS[len] : " ".repeat(len);
+    }
+
+    /**
+     * Implementation of getIndent() in the prelude: the base indent followed by len spaces, the base indent if
+     * len is not positive.
+     */
+    public static String indent(String baseIndent, int len) {
+        if (len <= 0) {
+            return baseIndent;
+        }
+        if (baseIndent == null || len > MAX_CACHED_LENGTH || baseIndent.length() > MAX_CACHED_LENGTH) {
+            return baseIndent + padding(len);
+        }
+        String[] indents = INDENTS.get(baseIndent);
+        if (indents == null) {
+            if (INDENTS.size() >= MAX_CACHED_BASE_INDENTS) {
+                return baseIndent + PADDINGS[len];
+            }
+            indents = INDENTS.computeIfAbsent(baseIndent, k -> new String[MAX_CACHED_LENGTH + 1]);
+        }
+        String indent = indents[len];
+        if (indent == null) {
+            indent = baseIndent + PADDINGS[len];
+            indents[len] = indent;
+        }
+        return indent;
+    }
+
+    /**
+     * Prefix sums of the token sizes (content plus 1 whitespace), the result[i] is the size of the tokens before
+     * token i. Used by addToLongSet in longArgList.
+     */
+    public static int[] sizes(List<LexerToken> src) {
+        final int[] result = new int[src.size() + 1];
+        for (int i = 0; i < src.size(); i++) {
+            result[i + 1] = result[i] + src.get(i).content.length() + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Implementation of normalizeEmptyLines() in maxOneEmptyLine: removes consecutive empty lines, removes
+     * whitespace on empty lines and adds a line break before the end of significant statements (brkX2endNodes).
+     *
+     * @return the changed input or null if the input is unchanged
+     */
+    public static String normalizeEmptyLines(TokenStream stream, Set<Integer> brkX2endNodes) {
+        return new EmptyLineNormalizer(stream).normalize(brkX2endNodes);
+    }
+
+    private static final class EmptyLineNormalizer {
+        private final TokenStream stream;
+        private final LexerToken[] tokens;
+        private final Substitutions substitutions;
+        private boolean changed = false;
+        // whitespace tokens since the last non-whitespace token
+        private int[] wsTokens = new int[16];
+        private int wsTokenCount = 0;
+        private boolean[] removed = new boolean[16];
+
+        private EmptyLineNormalizer(TokenStream stream) {
+            this.stream = stream;
+            this.tokens = stream.tokens;
+            this.substitutions = new Substitutions(stream.input);
+        }
+
+        private void remove(int begin, int end) {
+            if (begin < end) {
+                substitutions.put(begin, end, "");
+                changed = true;
+            }
+        }
+
+        private void addWSToken(int i) {
+            if (wsTokenCount == wsTokens.length) {
+                wsTokens = Arrays.copyOf(wsTokens, wsTokenCount * 2);
+                removed = new boolean[wsTokens.length];
+            }
+            wsTokens[wsTokenCount++] = i;
+        }
+
+        private void flushWSTokens(int secondEOLToken, int lastEOLToken) {
+            Arrays.fill(removed, 0, wsTokenCount, false);
+            int eolToken = -1;
+            int betweenStart = -1;
+            for (int j = 0; j < wsTokenCount; j++) {
+                final int k = wsTokens[j];
+                if (k >= secondEOLToken && k < lastEOLToken) {
+                    // removeDuplicateEmptyLines
+                    removed[j] = true;
+                } else if ("\n".equals(tokens[k].content)) {
+                    // removeWSOnEmptyLines, whitespace tokens between two line breaks (except removed ones)
+                    if (eolToken != -1 && !stream.inOffOnRange(tokens[eolToken].end)) {
+                        for (int b = betweenStart; b < j; b++) {
+                            final int w = wsTokens[b];
+                            if (!(w >= secondEOLToken && w < lastEOLToken) && !"\n".equals(tokens[w].content)) {
+                                removed[b] = true;
+                            }
+                        }
+                    }
+                    eolToken = k;
+                    betweenStart = j + 1;
+                }
+            }
+            int begin = -1;
+            int end = -1;
+            for (int j = 0; j < wsTokenCount; j++) {
+                if (removed[j]) {
+                    if (begin == -1) {
+                        begin = tokens[wsTokens[j]].begin;
+                    }
+                    end = tokens[wsTokens[j]].end;
+                } else if (begin != -1) {
+                    remove(begin, end);
+                    begin = -1;
+                }
+            }
+            if (begin != -1) {
+                remove(begin, end);
+            }
+            wsTokenCount = 0;
+        }
+
+        private String normalize(Set<Integer> brkX2endNodes) {
+            int firstEOLToken = -1;
+            int secondEOLToken = -1;
+            int lastEOLToken = -1;
+            int lastNewlinePos = -1;
+            for (int i = 0; i < tokens.length; i++) {
+                // removeDuplicateEmptyLines and removeWSOnEmptyLines
+                if (tokens[i].type == Token.WS) {
+                    if ("\n".equals(tokens[i].content)) {
+                        if (firstEOLToken == -1) {
+                            firstEOLToken = i;
+                        } else if (secondEOLToken == -1) {
+                            secondEOLToken = i;
+                        } else {
+                            lastEOLToken = i;
+                        }
+                    }
+                    addWSToken(i);
+                } else if (tokens[i].type == Token.LINE_COMMENT && firstEOLToken == -1) {
+                    flushWSTokens(-1, -1);
+                    firstEOLToken = i;
+                } else {
+                    if (lastEOLToken != -1 && !stream.inOffOnRange(tokens[secondEOLToken].begin)) {
+                        flushWSTokens(secondEOLToken, lastEOLToken);
+                    } else {
+                        flushWSTokens(-1, -1);
+                    }
+                    firstEOLToken = -1;
+                    secondEOLToken = -1;
+                    lastEOLToken = -1;
+                }
+                // addMissingNewLines
+                final int pos = stream.positions[i];
+                if (stream.hidden[i]) {
+                    if ("\n".equals(tokens[i].content)) {
+                        lastNewlinePos = pos;
+                    }
+                } else if (brkX2endNodes.contains(pos) && !stream.inOffOnRange(tokens[i].begin)
+                        && lastNewlinePos != pos) {
+                    substitutions.put(tokens[i].begin, tokens[i].end, "\n" + tokens[i].content);
+                    changed = true;
+                }
+            }
+            // empty lines at the end of the input are kept, whitespace on them is removed
+            flushWSTokens(-1, -1);
+            return changed ? substitutions.transformInput() : null;
+        }
+    }
+
+    /**
+     * Implementation of dontFormatOffOnRanges: positions of the tokens within @formatter:off/on ranges.
+     */
+    public static int[] unformattedPositions(TokenStream stream) {
+        final int[] result = new int[stream.tokens.length];
+        int count = 0;
+        for (int i = 0; i < stream.tokens.length && stream.offOnBegins.length > 0; i++) {
+            if (!stream.hidden[i] && stream.inOffOnRange(stream.tokens[i].begin)) {
+                result[count++] = stream.positions[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Implementation of keepLineBreakAfterSelectHint: positions of hints following the keyword SELECT.
+     */
+    public static int[] selectHintPositions(TokenStream stream) {
+        final LexerToken[] tokens = stream.tokens;
+        final int[] result = new int[tokens.length];
+        int count = 0;
+        LexerToken prevToken = null;
+        for (int i = 0; i < tokens.length; i++) {
+            final Token type = tokens[i].type;
+            if ((type == Token.LINE_COMMENT || type == Token.COMMENT) && tokens[i].content.length() > 3
+                    && tokens[i].content.charAt(2) == '+' && prevToken != null
+                    && "select".equalsIgnoreCase(prevToken.content)) {
+                // a second hint does not follow the keyword SELECT
+                prevToken = tokens[i];
+                result[count++] = stream.positions[i];
+            }
+            if (!stream.hidden[i]) {
+                prevToken = tokens[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Implementation of indentTokensOnNewLineOfFirstSelectionDirective: positions of the tokens in the first
+     * branch of conditional compilation selection directives ($if ... $elsif/$else/$end).
+     */
+    public static int[] firstSelectionDirectivePositions(TokenStream stream) {
+        final LexerToken[] tokens = stream.tokens;
+        final int[] result = new int[tokens.length];
+        int count = 0;
+        boolean withinFirstBranch = false;
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].type == Token.MACRO_SKIP && tokens[i].content.toLowerCase().startsWith("$if ")) {
+                withinFirstBranch = true;
+            } else if (withinFirstBranch && tokens[i].type == Token.MACRO_SKIP && tokens[i].content.startsWith("$")) {
+                withinFirstBranch = false;
+            } else if (withinFirstBranch && !stream.hidden[i]) {
+                result[count++] = stream.positions[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,91 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import com.trivadis.plsql.formatter.FormatterSettings;
+import oracle.dbtools.app.Format;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class of the benchmarks. Provides the Trivadis settings and variants of the custom format Arbori program,
+ * e.g. with the original implementation of a callback to compare with.
+ */
+public abstract class AbstractBenchmark {
+    protected FormatterSettings settings;
+    private final List<Path> arboriFiles = new ArrayList<>();
+
+    @Before
+    public void setupSettings() throws IOException {
+        settings = FormatterSettings.of(getResourcePath("trivadis_advanced_format.xml"),
+                getResourcePath("trivadis_custom_format.arbori"));
+    }
+
+    @After
+    public void deleteArboriFiles() throws IOException {
+        for (Path file : arboriFiles) {
+            Files.deleteIfExists(file);
+        }
+        arboriFiles.clear();
+    }
+
+    protected Path getResourcePath(String name) {
+        return Paths.get(Thread.currentThread().getContextClassLoader().getResource(name).getPath());
+    }
+
+    protected String readResource(String name) throws IOException {
+        return new String(Files.readAllBytes(getResourcePath(name)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the custom format Arbori program with LF line endings.
+     */
+    protected String getArboriProgram() throws IOException {
+        return readResource("trivadis_custom_format.arbori").replace("\r\n", "\n");
+    }
+
+    /**
+     * Returns the settings with the same options and the passed Arbori program. The program file is deleted after
+     * the benchmark.
+     */
+    protected FormatterSettings withArboriProgram(String program) throws IOException {
+        final Path file = Files.createTempFile("tvdformat-benchmark-", ".arbori");
+        arboriFiles.add(file);
+        Files.write(file, program.getBytes(StandardCharsets.UTF_8));
+        return new FormatterSettings(settings.getOptions(), file.toString());
+    }
+
+    /**
+     * Replaces the first occurrence of the current code with the original code, fails if the program does not
+     * contain the current code anymore.
+     */
+    protected String replaceCode(String program, String currentCode, String originalCode) {
+        final int pos = program.indexOf(currentCode);
+        Assert.assertTrue("Arbori program does not contain:\n" + currentCode, pos >= 0);
+        return program.substring(0, pos) + originalCode + program.substring(pos + currentCode.length());
+    }
+
+    /**
+     * Formats the SQL code after a warm-up and returns the average time per format in nanoseconds.
+     * All results must be the same, and equal to the expected result if passed.
+     */
+    protected long measure(Format formatter, String sql, String expected, int iterations) throws IOException {
+        // warm-up, the Arbori program is compiled on first use
+        final String first = formatter.format(sql);
+        if (expected != null) {
+            Assert.assertEquals(expected, first);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            Assert.assertEquals(first, formatter.format(sql));
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
+}
@@ -0,0 +1,54 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import oracle.dbtools.app.Format;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap allocated while formatting a large declare section with aligned assignments,
+ * right aligned keywords and case expressions (alignAssignments, alignRight, alignTypeDecl).
+ * Run with "mvn -P benchmark test".
+ */
+public class AlignmentAllocationBenchmark extends AbstractBenchmark {
+    private static final int ITERATIONS = 5;
+    private static final int DECLARATIONS = 500;
+
+    private String declareSection() {
+        final StringBuilder sb = new StringBuilder("declare\n");
+        for (int i = 0; i < DECLARATIONS; i++) {
+            sb.append("l_").append("v".repeat(i % 20)).append(i).append(" integer := ").append(i).append(";\n");
+        }
+        sb.append("begin\n");
+        for (int i = 0; i < DECLARATIONS; i++) {
+            sb.append("l_").append("v".repeat(i % 20)).append(i).append(" := l_").append(i % 7).append(" + 1;\n");
+        }
+        sb.append("select a, case when b = 1 then 'one' when b = 2 then 'two' else 'many' end as c into l_a, l_b from t where d = 1 and e = 2;\n");
+        sb.append("merge into t using s on (t.id = s.id) when matched then update set t.a = s.a when not matched then insert (id) values (s.id);\n");
+        return sb.append("end;\n/\n").toString();
+    }
+
+    private static long allocatedBytes() {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void declare_section() throws IOException {
+        final String sql = declareSection();
+        final Format formatter = settings.newFormatter();
+        // warm-up, the Arbori program is compiled
+        final String expected = formatter.format(sql);
+        final long startBytes = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Assert.assertEquals(expected, formatter.format(sql));
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long bytes = allocatedBytes() - startBytes;
+        System.out.println("allocated: " + bytes / ITERATIONS / 1024 / 1024 + " MB per format");
+        System.out.println("time:      " + elapsed / ITERATIONS / 1000000 + " ms per format");
+    }
+}
@@ -0,0 +1,48 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import com.trivadis.plsql.formatter.arbori.Actions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Compares the formatting time of the Java implementation of hot Arbori callbacks with their JavaScript
+ * implementation (maxOneEmptyLine, dontFormatOffOnRanges, keepLineBreakAfterSelectHint,
+ * indentTokensOnNewLineOfFirstSelectionDirective, longArgList). The equivalence of the results is tested
+ * in ArboriActionsTest. Run with "mvn -P benchmark test".
+ */
+public class ArboriActionsBenchmark extends AbstractBenchmark {
+    private static final int ITERATIONS = 5;
+    private static final int STATEMENTS = 300;
+
+    @After
+    public void teardown() {
+        System.clearProperty(Actions.ENABLED_PROPERTY);
+    }
+
+    private String script() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < STATEMENTS; i++) {
+            sb.append("select /*+ full(t) */ a, b, c from t where d = ").append(i).append(";\n\n\n   \n");
+            sb.append("-- @formatter:off\nSELECT    *\n   FROM dual;\n-- @formatter:on\n");
+            sb.append("begin\n   $if dbms_db_version.version >= 19 $then\n   p(1,\n   2);\n   $else\n   p(3);\n   $end\n");
+            sb.append("   p(p_1 => 1, p_2 => 2, p_3 => 3, p_4 => 4, p_5 => 5, p_6 => 6, p_7 => 7, p_8 => 8);\nend;\n/\n\n\n");
+        }
+        return sb.toString();
+    }
+
+    private long measure(String sql, boolean javaActions) throws IOException {
+        System.setProperty(Actions.ENABLED_PROPERTY, Boolean.toString(javaActions));
+        return measure(settings.newFormatter(), sql, null, ITERATIONS);
+    }
+
+    @Test
+    public void java_vs_javascript() throws IOException {
+        final String sql = script();
+        final long javaScript = measure(sql, false);
+        final long java = measure(sql, true);
+        System.out.println("JavaScript callbacks: " + javaScript / 1000000 + " ms per format");
+        System.out.println("Java callbacks:       " + java / 1000000 + " ms per format");
+    }
+}
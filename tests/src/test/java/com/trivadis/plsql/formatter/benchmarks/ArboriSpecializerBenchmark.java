@@ -0,0 +1,53 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import com.trivadis.plsql.formatter.ArboriSpecializer;
+import com.trivadis.plsql.formatter.FormatterSettings;
+import oracle.dbtools.app.Format;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the formatting time of the custom format Arbori program with the program specialized for the
+ * options (includes inlined, option binds folded, dead rules removed). Both must produce the same result.
+ * Run with "mvn -P benchmark test".
+ */
+public class ArboriSpecializerBenchmark extends AbstractBenchmark {
+    private static final int ITERATIONS = 5;
+
+    private String script() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (String fileName : new String[]{"package_body.pkb", "query.sql"}) {
+            sb.append(readResource("unformatted/" + fileName)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private void run(FormatterSettings original) throws IOException {
+        // the specialized program must be based on the std.arbori of the SQLcl version in use
+        final Path includeDir = getResourcePath("original/20.4.0/std.arbori").getParent();
+        final FormatterSettings specialized = new FormatterSettings(original.getOptions(),
+                withArboriProgram(ArboriSpecializer.specialize(original, includeDir)).getArboriFileName());
+        final String sql = script();
+        final String expected = original.newFormatter().format(sql);
+        final long originalNanos = measure(original.newFormatter(), sql, expected, ITERATIONS);
+        final long specializedNanos = measure(specialized.newFormatter(), sql, expected, ITERATIONS);
+        System.out.println("original program:    " + originalNanos / 1000000 + " ms per format");
+        System.out.println("specialized program: " + specializedNanos / 1000000 + " ms per format");
+    }
+
+    @Test
+    public void commas_after() throws IOException {
+        run(settings);
+    }
+
+    @Test
+    public void commas_before() throws IOException {
+        final Map<String, Object> options = new HashMap<>(settings.getOptions());
+        options.put(new Format().breaksComma, Format.Breaks.Before);
+        run(new FormatterSettings(options, settings.getArboriFileName()));
+    }
+}
@@ -0,0 +1,120 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import com.trivadis.plsql.formatter.BatchFormatter;
+import com.trivadis.plsql.formatter.FormatResult;
+import com.trivadis.plsql.formatter.FormatterPool;
+import com.trivadis.plsql.formatter.SqlExtractor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the throughput of formatting a repository with SQL files, markdown files, Liquibase changelogs,
+ * Flyway Java migrations and APEX exports, sequentially and in parallel.
+ * Run with "mvn -P benchmark test".
+ */
+public class ExtractorBenchmark extends AbstractBenchmark {
+    private static final int COPIES = 20;
+    private static final int REGIONS_PER_FILE = 10;
+    private List<SqlExtractor> extractors;
+    private String query;
+    private String markdown;
+
+    @Before
+    public void setup() throws IOException {
+        extractors = List.of(SqlExtractor.load("markdown"), SqlExtractor.load("liquibase"),
+                SqlExtractor.load("flyway"), SqlExtractor.load("apex"));
+        query = readResource("unformatted/query.sql");
+        markdown = readResource("unformatted/markdown.md");
+        FormatterPool.clear();
+    }
+
+    @After
+    public void teardown() {
+        FormatterPool.clear();
+    }
+
+    private String liquibaseChangelog() {
+        final StringBuilder sb = new StringBuilder("<databaseChangeLog>\n");
+        for (int i = 0; i < REGIONS_PER_FILE; i++) {
+            sb.append("    <changeSet id=\"").append(i).append("\" author=\"benchmark\">\n");
+            sb.append("        <sql><![CDATA[\n").append(query).append("\n        ]]></sql>\n");
+            sb.append("    </changeSet>\n");
+        }
+        return sb.append("</databaseChangeLog>\n").toString();
+    }
+
+    private String flywayMigration() {
+        final StringBuilder sb = new StringBuilder("import org.flywaydb.core.api.migration.BaseJavaMigration;\n\n");
+        sb.append("public class V1__Benchmark extends BaseJavaMigration {\n");
+        for (int i = 0; i < REGIONS_PER_FILE; i++) {
+            sb.append("    private static final String SQL_").append(i).append(" = \"\"\"\n");
+            sb.append(query).append("\n        \"\"\";\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private String apexExport() {
+        final StringBuilder sb = new StringBuilder("begin\nwwv_flow_imp.import_begin (\n p_version_yyyy_mm_dd=>'2022.10.07'\n);\nend;\n/\n");
+        for (int i = 0; i < REGIONS_PER_FILE; i++) {
+            sb.append("begin\nwwv_flow_imp_page.create_page_plug(\n p_id=>wwv_flow_imp.id(").append(i).append(")\n");
+            sb.append(",p_plug_source=>wwv_flow_string.join(wwv_flow_t_varchar2(\n");
+            final List<String> lines = query.lines().map(l -> "'" + l.replace("'", "''") + "'").collect(Collectors.toList());
+            sb.append(String.join(",\n", lines)).append("))\n);\nend;\n/\n");
+        }
+        return sb.toString();
+    }
+
+    private List<Path> createRepository() throws IOException {
+        final Path dir = Files.createTempDirectory("plsql-formatter-benchmark-");
+        final List<Path> files = new ArrayList<>();
+        for (int i = 0; i < COPIES; i++) {
+            files.add(Files.writeString(Paths.get(dir + File.separator + "query" + i + ".sql"), query));
+            files.add(Files.writeString(Paths.get(dir + File.separator + "readme" + i + ".md"), markdown));
+            files.add(Files.writeString(Paths.get(dir + File.separator + "changelog" + i + ".xml"), liquibaseChangelog()));
+            files.add(Files.writeString(Paths.get(dir + File.separator + "V" + i + "__Benchmark.java"), flywayMigration()));
+            files.add(Files.writeString(Paths.get(dir + File.separator + "f" + i + ".sql"), apexExport()));
+        }
+        return files;
+    }
+
+    private long run(int threads, List<String> expected) throws IOException {
+        final List<Path> files = createRepository();
+        final long start = System.nanoTime();
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings, threads, StandardCharsets.UTF_8, extractors)) {
+            final List<FormatResult> results = batchFormatter.format(files);
+            final long elapsed = System.nanoTime() - start;
+            for (int i = 0; i < results.size(); i++) {
+                Assert.assertTrue(results.get(i).getFile() + " not changed", results.get(i).isChanged());
+                if (expected.size() <= i) {
+                    expected.add(results.get(i).getContent());
+                }
+                Assert.assertEquals(expected.get(i), results.get(i).getContent());
+            }
+            return elapsed;
+        }
+    }
+
+    @Test
+    public void mixed_repository() throws IOException {
+        final List<String> expected = new ArrayList<>();
+        // warm-up, all formatters of the pool are compiled
+        run(4, expected);
+        final long sequentialNanos = run(1, expected);
+        final long parallelNanos = run(4, expected);
+        final int files = COPIES * 5;
+        System.out.println("sequential: " + files * 1000000000L / sequentialNanos + " files/s");
+        System.out.println("4 threads:  " + files * 1000000000L / parallelNanos + " files/s");
+    }
+}
@@ -0,0 +1,57 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import com.trivadis.plsql.formatter.FormatterPool;
+import oracle.dbtools.app.Format;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Compares the time to the first formatted result of a new formatter with a formatter reused from the pool.
+ * Run with "mvn -P benchmark test".
+ */
+public class FormatterStartupBenchmark extends AbstractBenchmark {
+    private static final int ITERATIONS = 10;
+    private String content;
+
+    @Before
+    public void setup() throws IOException {
+        content = readResource("unformatted/package_body.pkb");
+        FormatterPool.clear();
+    }
+
+    @After
+    public void teardown() {
+        FormatterPool.clear();
+    }
+
+    @Test
+    public void startup() throws IOException {
+        String expected = null;
+        long newNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long start = System.nanoTime();
+            final Format formatter = settings.newFormatter();
+            final String result = formatter.format(content);
+            newNanos += System.nanoTime() - start;
+            if (expected == null) {
+                expected = result;
+            }
+            Assert.assertEquals(expected, result);
+        }
+        long pooledNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long start = System.nanoTime();
+            final Format formatter = FormatterPool.acquire(settings);
+            final String result = formatter.format(content);
+            FormatterPool.release(settings, formatter);
+            pooledNanos += System.nanoTime() - start;
+            Assert.assertEquals(expected, result);
+        }
+        System.out.println("new formatter:    " + newNanos / ITERATIONS / 1000000 + " ms per first format");
+        System.out.println("pooled formatter: " + pooledNanos / ITERATIONS / 1000000 + " ms per first format");
+    }
+}
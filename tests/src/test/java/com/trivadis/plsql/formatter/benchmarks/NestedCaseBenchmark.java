@@ -0,0 +1,82 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import oracle.dbtools.app.Format;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Compares the formatting time of select lists with deeply nested case expressions and scalar subqueries with the
+ * original implementation of indentInExistsXmlTableScalarSubquery and indentCaseExpression, which walk the
+ * descendants of every matching node. The indentation callbacks must not walk the same nodes once per nesting
+ * level. Both must produce the same result.
+ * Run with "mvn -P benchmark test".
+ */
+public class NestedCaseBenchmark extends AbstractBenchmark {
+    private static final int ITERATIONS = 5;
+    private static final int[] DEPTHS = {5, 10, 20, 40};
+    private static final String CURRENT_CODE = """
+                forEachLineBreak(parentNode, function(pos) {
+                  logger.finest(struct.getClass(), "addIndent on pos " + pos + " for token " + target.getSrc()[pos].content);
+                  struct.putNewline(pos, getIndent(struct.getNewline(pos), addIndent.length));
+                });
+            """;
+    // #FIRST# is the index of the first descendant, 0 in indentInExistsXmlTableScalarSubquery, 1 in indentCaseExpression
+    private static final String ORIGINAL_CODE = """
+                var descendants = parentNode.descendants();
+                var prevPos = 0
+                for (i = #FIRST#, len = descendants.length; i < len; i++) {
+                  var node = descendants.get(i);
+                  var pos = node.from;
+                  var nodeIndent = struct.getNewline(pos);
+                  if (nodeIndent != null && pos > prevPos) {
+                    logger.finest(struct.getClass(), "addIndent on pos " + pos + " for token " + target.getSrc()[pos].content);
+                    struct.putNewline(pos, getIndent(nodeIndent, addIndent.length));
+                    prevPos = pos
+                  }
+                }
+            """;
+
+    private String nestedCase(int depth) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("select c").append(i).append(", case when a").append(i).append(" = 1 then 'one' when a")
+                    .append(i).append(" = 2 then case b").append(i).append(" when 1 then 'x' else 'y' end else (");
+        }
+        sb.append("select 'z' from dual");
+        for (int i = depth - 1; i >= 0; i--) {
+            sb.append(") end as r").append(i).append(" from t").append(i).append(" where d").append(i).append(" = 1");
+        }
+        return sb.append(";\n").toString();
+    }
+
+    private String originalProgram() throws IOException {
+        final String program = replaceCode(getArboriProgram(), CURRENT_CODE, ORIGINAL_CODE.replace("#FIRST#", "0"));
+        return replaceCode(program, CURRENT_CODE, ORIGINAL_CODE.replace("#FIRST#", "1"));
+    }
+
+    private void run(Format.Breaks breaksComma) throws IOException {
+        final Format formatter = settings.newFormatter();
+        formatter.options.put(formatter.breaksComma, breaksComma);
+        final Format originalFormatter = withArboriProgram(originalProgram()).newFormatter();
+        originalFormatter.options.put(originalFormatter.breaksComma, breaksComma);
+        for (int depth : DEPTHS) {
+            final String sql = nestedCase(depth);
+            final String expected = originalFormatter.format(sql);
+            final long originalNanos = measure(originalFormatter, sql, expected, ITERATIONS);
+            final long nanos = measure(formatter, sql, expected, ITERATIONS);
+            System.out.println("depth " + depth + ": original " + originalNanos / 1000000 + " ms, line break index "
+                    + nanos / 1000000 + " ms per format");
+        }
+    }
+
+    @Test
+    public void nested_case_commas_after() throws IOException {
+        run(Format.Breaks.After);
+    }
+
+    @Test
+    public void nested_case_commas_before() throws IOException {
+        run(Format.Breaks.Before);
+    }
+}
@@ -0,0 +1,54 @@
+package com.trivadis.plsql.formatter.benchmarks;
+
+import oracle.dbtools.app.Format;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Compares the formatting time of statements with deeply nested function calls with the original implementation
+ * of addToLongSet in longArgList, which sums the token sizes of every node. The long argument list detection must
+ * not grow quadratically with the nesting depth. Both must produce the same result.
+ * Run with "mvn -P benchmark test".
+ */
+public class NestedExpressionBenchmark extends AbstractBenchmark {
+    private static final int ITERATIONS = 5;
+    private static final int[] DEPTHS = {10, 20, 40, 80};
+    private static final String CURRENT_CODE = """
+                var size = getSize(node);
+            """;
+    private static final String ORIGINAL_CODE = """
+                var size = 0;
+                for(i = node.from; i < node.to; i++) {
+                  // content plus 1 whitespace
+                  size += (target.getSrc()[i].content.length) + 1;
+                }
+            """;
+
+    private String nestedExpression(int depth) {
+        final StringBuilder sb = new StringBuilder("begin\n   l_result := ");
+        for (int i = 0; i < depth; i++) {
+            sb.append("f").append(i).append("(p_value_").append(i).append(", ");
+        }
+        sb.append("p_value");
+        for (int i = depth - 1; i >= 0; i--) {
+            sb.append(", p_other_value_").append(i).append(")");
+        }
+        return sb.append(";\nend;\n/\n").toString();
+    }
+
+    @Test
+    public void nested_calls() throws IOException {
+        final Format formatter = settings.newFormatter();
+        final Format originalFormatter = withArboriProgram(replaceCode(getArboriProgram(), CURRENT_CODE, ORIGINAL_CODE))
+                .newFormatter();
+        for (int depth : DEPTHS) {
+            final String sql = nestedExpression(depth);
+            final String expected = originalFormatter.format(sql);
+            final long originalNanos = measure(originalFormatter, sql, expected, ITERATIONS);
+            final long nanos = measure(formatter, sql, expected, ITERATIONS);
+            System.out.println("depth " + depth + ": original " + originalNanos / 1000000 + " ms, prefix sums "
+                    + nanos / 1000000 + " ms per format");
+        }
+    }
+}
@@ -1,24 +1,62 @@
 package com.trivadis.plsql.formatter.settings;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Map;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.LogManager;
 
+import org.junit.After;
 import org.junit.Assert;
 
+import com.trivadis.plsql.formatter.ArboriProfiler;
+import com.trivadis.plsql.formatter.FormatterPool;
+import com.trivadis.plsql.formatter.FormatterSettings;
+import com.trivadis.plsql.formatter.RuleProfile;
+
 import oracle.dbtools.app.Format;
-import oracle.dbtools.app.Persist2XML;
 
 public abstract class ConfiguredTestFormatter {
+    // e.g. mvn test -Dtvdformat.profile=target/arbori-profile.csv, profiles the Arbori rules per test class
+    private static final String PROFILE_FILE = System.getProperty("tvdformat.profile");
+    private static final List<RuleProfile> PROFILES = Collections.synchronizedList(new ArrayList<>());
+    private static ArboriProfiler profiler;
+    protected final FormatterSettings settings;
     protected final Format formatter;
 
     public ConfiguredTestFormatter() {
         super();
         loadLoggingConf();
-        formatter = new Format();
-        configureFormatter();
+        settings = createSettings();
+        formatter = FormatterPool.acquire(settings);
+        if (PROFILE_FILE != null) {
+            ArboriProfiler.start(formatter);
+        }
+    }
+
+    @After
+    public void releaseFormatter() {
+        if (PROFILE_FILE != null) {
+            PROFILES.addAll(ArboriProfiler.stop(formatter, getClass().getSimpleName()));
+        }
+        FormatterPool.release(settings, formatter);
+    }
+
+    private static synchronized FormatterSettings getProfiledSettings(FormatterSettings settings) throws IOException {
+        if (profiler == null) {
+            profiler = new ArboriProfiler(settings);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    ArboriProfiler.write(Paths.get(PROFILE_FILE), new ArrayList<>(PROFILES));
+                    profiler.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        return profiler.getSettings();
     }
     
     private void loadLoggingConf() {
@@ -30,17 +68,14 @@ public abstract class ConfiguredTestFormatter {
         }
     }
 
-    private Map<String, Object> getOptions() {
-        Map<String, Object> map;
+    private FormatterSettings createSettings() {
+        URL advancedFormat = Thread.currentThread().getContextClassLoader().getResource("trivadis_advanced_format.xml"); // symbolic link
         try {
-            URL advancedFormat = Thread.currentThread().getContextClassLoader().getResource("trivadis_advanced_format.xml"); // symbolic link
-            map = Persist2XML.read(advancedFormat);
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
+            final FormatterSettings settings = FormatterSettings.of(advancedFormat, getArboriFileName());
+            return PROFILE_FILE == null ? settings : getProfiledSettings(settings);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return map;
     }
     
     private String getArboriFileName() {
@@ -48,20 +83,12 @@ public abstract class ConfiguredTestFormatter {
         return customFormat.getFile();
     }
 
-    private void configureFormatter() {
-        Map<String, Object> map = getOptions();
-        for (String key : map.keySet()) {
-            formatter.options.put(key, map.get(key));
-        }
-        formatter.options.put(formatter.formatProgramURL, getArboriFileName());
-    }
-
     public Format getFormatter() {
         return formatter;
     }
 
     public void resetOptions() {
-        configureFormatter();
+        settings.configure(formatter);
     }
     
     public void formatAndAssert(CharSequence expected) {
@@ -137,4 +137,75 @@ public class FormatterOffOn extends ConfiguredTestFormatter {
         Assert.assertEquals(expected, actual);
     }
 
+    @Test
+    public void keep_empty_lines_after_off_without_on() {
+        final String sql =
+            """
+            select *
+              from dual;
+            -- @formatter:off
+            SELECT
+               *
+
+
+                  from
+                     dual
+            ;
+            """;
+        formatAndAssert(sql);
+    }
+
+    @Test
+    public void keep_statements_on_same_line_and_empty_lines_in_off_range() {
+        final String sql =
+            """
+            select *
+              from dual;
+            -- @formatter:off
+            SELECT * FROM dual; SELECT * FROM dual;
+
+
+
+            SELECT * FROM dual; SELECT * FROM dual;
+            -- @formatter:on
+            select *
+              from dual;
+            """;
+        formatAndAssert(sql);
+    }
+
+    @Test
+    public void remove_empty_lines_before_and_after_off_range() throws IOException {
+        final String unformatted =
+            """
+            select * from dual;
+
+
+
+            -- @formatter:off
+            SELECT * FROM dual; SELECT * FROM dual;
+            -- @formatter:on
+
+
+
+            select * from dual; select * from dual;
+            """.trim();
+        final String expected =
+            """
+            select *
+              from dual;
+
+            -- @formatter:off
+            SELECT * FROM dual; SELECT * FROM dual;
+            -- @formatter:on
+
+            select *
+              from dual;
+            select *
+              from dual;
+            """.trim();
+        final String actual = formatter.format(unformatted);
+        Assert.assertEquals(expected, actual);
+    }
+
 }
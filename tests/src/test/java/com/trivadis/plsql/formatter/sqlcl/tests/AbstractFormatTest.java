@@ -1,13 +1,214 @@
 package com.trivadis.plsql.formatter.sqlcl.tests;
 
 import org.junit.Assert;
+import org.junit.Assume;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import javax.script.ScriptContext;
 
 public abstract class AbstractFormatTest extends AbstractSqlclTest {
 
     public void process_dir(final RunType runType) {
+        process_dir(runType, tempDir.toString(), "mext=");
+    }
+
+    public void process_dir_in_parallel(final RunType runType) {
+        process_dir(runType, tempDir.toString(), "mext=", "threads=3");
+    }
+
+    public void process_dir_with_timeout(final RunType runType) {
+        process_dir(runType, tempDir.toString(), "mext=", "timeout=60");
+    }
+
+    public void process_dir_with_cache(final RunType runType) throws IOException {
+        final String cacheFile = tempDir.toString() + File.separator + "tvdformat.cache";
+        // populate cache
+        process_dir(runType, tempDir.toString(), "mext=", "cache=" + cacheFile);
+        Assert.assertTrue(new File(cacheFile).isFile());
+        // entry of a deleted file
+        Files.write(Paths.get(cacheFile), "deleted=\n".getBytes(StandardCharsets.ISO_8859_1), StandardOpenOption.APPEND);
+        // same console output and result based on cache entries
+        byteArrayOutputStream.reset();
+        process_dir(runType, tempDir.toString(), "mext=", "cache=" + cacheFile);
+        // entries not used in the last run are removed
+        final String cache = new String(Files.readAllBytes(Paths.get(cacheFile)), StandardCharsets.ISO_8859_1);
+        Assert.assertFalse(cache.contains("deleted="));
+    }
+
+    public void process_dir_check(final RunType runType) {
+        // unformatted files
+        final int status = runCheck(runType, tempDir.toString(), "mext=", "--check");
+        final String actual = getConsoleOutput();
+        // the tvdformat command must not terminate an interactive SQLcl session
+        Assert.assertEquals(runType == RunType.FormatJS ? 1 : 0, status);
+        Assert.assertTrue(actual.contains("Checking file 1 of 3: " + tempDir.toString() + File.separator + "package_body.pkb... requires formatting."));
+        Assert.assertTrue(actual.contains("Checking file 2 of 3: " + tempDir.toString() + File.separator + "query.sql... requires formatting."));
+        Assert.assertTrue(actual.contains("2 of 3 files require formatting."));
+        Assert.assertEquals(getOriginalContent("package_body.pkb"), getFormattedContent("package_body.pkb"));
+        Assert.assertEquals(getOriginalContent("query.sql"), getFormattedContent("query.sql"));
+
+        // formatted files
+        run(runType, tempDir.toString(), "mext=");
+        byteArrayOutputStream.reset();
+        Assert.assertEquals(0, runCheck(runType, tempDir.toString(), "mext=", "--check"));
+        Assert.assertTrue(getConsoleOutput().contains("0 of 3 files require formatting."));
+    }
+
+    public void process_dir_twice(final RunType runType) throws IOException {
+        process_dir(runType);
+        final Path file = Paths.get(tempDir.toString() + File.separator + "query.sql");
+        final FileTime lastModified = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, lastModified);
+        // formatted files are not written again
+        byteArrayOutputStream.reset();
+        process_dir(runType);
+        Assert.assertEquals(lastModified, Files.getLastModifiedTime(file));
+    }
+
+    public void process_script_split(final RunType runType) throws IOException {
+        // prepare
+        final Path script = Paths.get(Thread.currentThread().getContextClassLoader().getResource("script/deployment.sql").getPath());
+        final Path whole = Paths.get(tempDir.toString() + File.separator + "whole.sql");
+        final Path split = Paths.get(tempDir.toString() + File.separator + "split.sql");
+        Files.copy(script, whole);
+        Files.copy(script, split);
+
+        // run
+        run(runType, whole.toString());
+        final String actual = run(runType, split.toString(), "split=1", "threads=4");
+        Assert.assertTrue(actual.contains("split.sql... done."));
+
+        // same result as whole-file formatting
+        Assert.assertEquals(getFormattedContent("whole.sql"), getFormattedContent("split.sql"));
+    }
+
+    public void process_dir_with_ignore_file(final RunType runType) throws IOException {
+        // prepare
+        Files.writeString(Paths.get(tempDir.toString() + File.separator + ".tvdformatignore"),
+                "# generated and third party code\nnode_modules/\nsyntax_error.sql\n");
+        final Path ignored = Paths.get(tempDir.toString() + File.separator + "node_modules" + File.separator + "query.sql");
+        Files.createDirectories(ignored.getParent());
+        Files.writeString(ignored, getOriginalContent("query.sql"));
+
+        // run
+        final String actual = run(runType, tempDir.toString(), "mext=", "threads=2");
+        Assert.assertTrue(actual.contains("Formatting file 1 of 2: " + tempDir + File.separator + "package_body.pkb... done."));
+        Assert.assertTrue(actual.contains("Formatting file 2 of 2: " + tempDir + File.separator + "query.sql... done."));
+
+        // files in ignored subtrees are not changed
+        Assert.assertEquals(getOriginalContent("query.sql"), Files.readString(ignored));
+        Assert.assertEquals(getOriginalContent("syntax_error.sql"), getFormattedContent("syntax_error.sql"));
+        Assert.assertNotEquals(getOriginalContent("query.sql"), getFormattedContent("query.sql"));
+    }
+
+    public void process_with_extractors(final RunType runType) throws IOException {
+        // prepare
+        final Path changelog = Paths.get(tempDir.toString() + File.separator + "changelog.xml");
+        Files.writeString(changelog,
+            """
+            <databaseChangeLog>
+                <changeSet id="1" author="test">
+                    <sql>
+                        SELECT * FROM dual;
+                    </sql>
+                </changeSet>
+            </databaseChangeLog>
+            """);
+        final Path pom = Paths.get(tempDir.toString() + File.separator + "pom.xml");
+        Files.writeString(pom, "<project/>\n");
+
+        // run
+        final String actual = run(runType, tempDir.toString(), "mext=", "extract=liquibase");
+        Assert.assertTrue(actual.contains("changelog.xml... done."));
+        Assert.assertTrue(actual.contains("pom.xml... no embedded SQL code found... skipped."));
+
+        // only the SQL code in the changelog is formatted
+        final String expected =
+            """
+            <databaseChangeLog>
+                <changeSet id="1" author="test">
+                    <sql>
+                        select *
+                          from dual;
+                    </sql>
+                </changeSet>
+            </databaseChangeLog>
+            """;
+        Assert.assertEquals(expected, Files.readString(changelog));
+        Assert.assertEquals("<project/>\n", Files.readString(pom));
+    }
+
+    public void process_buffer_twice(final RunType runType) {
+        Assume.assumeNotNull(ctx.getSQLPlusBuffer());
+        // first run formats all statements
+        ctx.getSQLPlusBuffer().getBufferSafe().resetBuffer(Arrays.asList(
+                "SELECT * FROM dual;", "SELECT dummy FROM dual;"));
+        final String actual1 = run(runType, "*");
+        Assert.assertTrue(actual1.contains("Formatting SQLcl buffer... done."));
+        Assert.assertEquals("select *\n  from dual;\nselect dummy\n  from dual;",
+                ctx.getSQLPlusBuffer().getBufferSafe().getBuffer().trim());
+
+        // second run with a changed statement
+        ctx.getSQLPlusBuffer().getBufferSafe().resetBuffer(Arrays.asList(
+                "select *", "  from dual;", "SELECT dummy AS x FROM dual;"));
+        final String actual2 = run(runType, "*");
+        Assert.assertTrue(actual2.contains("Formatting SQLcl buffer... done."));
+        Assert.assertEquals("select *\n  from dual;\nselect dummy as x\n  from dual;",
+                ctx.getSQLPlusBuffer().getBufferSafe().getBuffer().trim());
+    }
+
+    public void process_changed_only(final RunType runType) throws IOException, InterruptedException {
+        // prepare git repository with a committed, a changed and an untracked file
+        git("init", "-q");
+        git("add", ".");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "unformatted files");
+        final Path query = Paths.get(tempDir.toString() + File.separator + "query.sql");
+        Files.write(query, (getOriginalContent("query.sql") + "\n").getBytes());
+        final Path newQuery = Paths.get(tempDir.toString() + File.separator + "new_query.sql");
+        Files.write(newQuery, getOriginalContent("query.sql").getBytes());
+
+        // run
+        final String actual = run(runType, tempDir.toString(), "mext=", "changed=HEAD");
+        Assert.assertTrue(actual.contains("Formatting file 1 of 2: " + newQuery.toRealPath() + "... done."));
+        Assert.assertTrue(actual.contains("Formatting file 2 of 2: " + query.toRealPath() + "... done."));
+
+        // package_body.pkb is unchanged in the working tree
+        Assert.assertEquals(getOriginalContent("package_body.pkb"), getFormattedContent("package_body.pkb"));
+        Assert.assertEquals(getFormattedContent("query.sql"), getFormattedContent("new_query.sql"));
+    }
+
+    private void git(final String... arguments) throws IOException, InterruptedException {
+        final String[] command = new String[arguments.length + 1];
+        command[0] = "git";
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        final Process process = new ProcessBuilder(command).directory(tempDir.toFile()).inheritIO().start();
+        Assert.assertEquals(0, process.waitFor());
+    }
+
+    private int runCheck(final RunType runType, final String... arguments) {
+        // a failed check of format.js terminates the JVM unless an exit handler is bound
+        final int[] exitStatus = {0};
+        scriptContext.setAttribute("exitHandler", (IntConsumer) status -> exitStatus[0] = status, ScriptContext.ENGINE_SCOPE);
+        try {
+            run(runType, arguments);
+        } finally {
+            scriptContext.removeAttribute("exitHandler", ScriptContext.ENGINE_SCOPE);
+        }
+        return exitStatus[0];
+    }
+
+    private void process_dir(final RunType runType, final String... arguments) {
         // console output
         final String expected =
             """
@@ -22,7 +223,7 @@ public abstract class AbstractFormatTest extends AbstractSqlclTest {
             
             Expected: name_wo_function_call,identifier,term,factor,pri,n... skipped.
             """.replace("#TEMP_DIR#",tempDir.toString()).replace("#FILE_SEP#", File.separator);
-        final String actual = run(runType, tempDir.toString(), "mext=");
+        final String actual = run(runType, arguments);
         Assert.assertEquals(expected, actual);
 
         // package_body.pkb
@@ -81,6 +282,34 @@ public abstract class AbstractFormatTest extends AbstractSqlclTest {
         Assert.assertEquals(getOriginalContent("syntax_error.sql"), getFormattedContent("syntax_error.sql"));
     }
 
+    public void process_with_bom_and_crlf(final RunType runType) throws IOException {
+        // prepare
+        final Path file = Paths.get(tempDir.toString() + File.separator + "crlf.sql");
+        Files.write(file, "\uFEFFSELECT * FROM dual;\r\n".getBytes(StandardCharsets.UTF_8));
+
+        // run
+        final String actual = run(runType, file.toString());
+        Assert.assertTrue(actual.contains("crlf.sql... done."));
+
+        // crlf.sql
+        Assert.assertEquals("\uFEFFselect *\r\n  from dual;", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    public void process_with_encoding(final RunType runType) throws IOException {
+        // prepare
+        final Path file = Paths.get(tempDir.toString() + File.separator + "latin1.sql");
+        Files.write(file, "SELECT '\u00e4' FROM dual;".getBytes(StandardCharsets.ISO_8859_1));
+
+        // run with default encoding
+        final String actualUtf8 = run(runType, file.toString());
+        Assert.assertTrue(actualUtf8.contains("latin1.sql... file is not encoded in UTF-8... skipped."));
+
+        // run with matching encoding
+        final String actualLatin1 = run(runType, file.toString(), "encoding=ISO-8859-1");
+        Assert.assertTrue(actualLatin1.contains("latin1.sql... done."));
+        Assert.assertEquals("select '\u00e4'\n  from dual;", new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+    }
+
     public void process_pkb_only(final RunType runType) {
         // run
         final String actual = run(runType, tempDir.toString(), "ext=pkb", "mext=");
@@ -420,8 +649,16 @@ public abstract class AbstractFormatTest extends AbstractSqlclTest {
     }
 
     public void process_markdown_only(final RunType runType) {
+        process_markdown_only(runType, tempDir.toString(), "ext=");
+    }
+
+    public void process_markdown_only_in_parallel(final RunType runType) {
+        process_markdown_only(runType, tempDir.toString(), "ext=", "threads=4");
+    }
+
+    private void process_markdown_only(final RunType runType, final String... arguments) {
         // run
-        final String actualConsole = run(runType, tempDir.toString(), "ext=");
+        final String actualConsole = run(runType, arguments);
         Assert.assertTrue (actualConsole.contains("Formatting file 1 of 1: " + tempDir.toString() + File.separator + "markdown.md... done."));
 
         // markdown.md
@@ -12,6 +12,8 @@ import java.nio.file.Paths;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
@@ -27,8 +29,10 @@ import oracle.dbtools.raptor.newscriptrunner.ScriptRunnerContext;
 import oracle.dbtools.raptor.newscriptrunner.WrapListenBufferOutputStream;
 
 public abstract class AbstractSqlclTest {
-    protected final ScriptEngineManager scriptEngineManager = new ScriptEngineManager();
-    protected final ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("JavaScript");
+    // format.js is compiled once per JVM, every test gets fresh globals via the bindings of its script context
+    private static final ScriptEngine SCRIPT_ENGINE = new ScriptEngineManager().getEngineByName("JavaScript");
+    private static CompiledScript formatScript;
+    protected final ScriptEngine scriptEngine = SCRIPT_ENGINE;
     protected final ScriptContext scriptContext = new SimpleScriptContext();
     protected final ScriptRunnerContext ctx = new ScriptRunnerContext();
     protected final ScriptExecutor sqlcl = new ScriptExecutor(null);
@@ -85,8 +89,17 @@ public abstract class AbstractSqlclTest {
         }
     }
     
+    private static synchronized CompiledScript getFormatScript() throws ScriptException, IOException {
+        if (formatScript == null) {
+            final URL script = Thread.currentThread().getContextClassLoader().getResource("format.js");
+            try (InputStreamReader reader = new InputStreamReader(script.openStream())) {
+                formatScript = ((Compilable) SCRIPT_ENGINE).compile(reader);
+            }
+        }
+        return formatScript;
+    }
+
     public String runScript(String... arguments) {
-        final URL script = Thread.currentThread().getContextClassLoader().getResource("format.js");
         final String[] args = new String[arguments.length + 1];
         args[0] = "format.js";
         for (int i=0; i < arguments.length; i++) {
@@ -94,7 +107,7 @@ public abstract class AbstractSqlclTest {
         }
         scriptContext.setAttribute("args", args, ScriptContext.ENGINE_SCOPE);
         try {
-            scriptEngine.eval(new InputStreamReader(script.openStream()), scriptContext);
+            getFormatScript().eval(scriptContext);
         } catch (ScriptException | IOException e) {
             throw new RuntimeException(e);
         }
@@ -108,7 +121,7 @@ public abstract class AbstractSqlclTest {
         return getConsoleOutput();
     }
     
-    private String getConsoleOutput(){
+    protected String getConsoleOutput(){
         try {
             ctx.getOutputStream().flush();
         } catch (IOException e) {
@@ -2,6 +2,8 @@ package com.trivadis.plsql.formatter.sqlcl.tests;
 
 import org.junit.Test;
 
+import java.io.IOException;
+
 public class FormatTest extends AbstractFormatTest {
 
     @Test
@@ -9,6 +11,16 @@ public class FormatTest extends AbstractFormatTest {
         process_dir(RunType.FormatJS);
     }
 
+    @Test
+    public void process_dir_in_parallel() {
+        process_dir_in_parallel(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_dir_with_cache() throws IOException {
+        process_dir_with_cache(RunType.FormatJS);
+    }
+
     @Test
     public void process_pkb_only() {
         process_pkb_only(RunType.FormatJS);
@@ -44,4 +56,59 @@ public class FormatTest extends AbstractFormatTest {
         process_markdown_only(RunType.FormatJS);
     }
 
+    @Test
+    public void process_markdown_only_in_parallel() {
+        process_markdown_only_in_parallel(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_with_bom_and_crlf() throws IOException {
+        process_with_bom_and_crlf(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_with_encoding() throws IOException {
+        process_with_encoding(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_dir_check() {
+        process_dir_check(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_dir_twice() throws IOException {
+        process_dir_twice(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_changed_only() throws IOException, InterruptedException {
+        process_changed_only(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_dir_with_timeout() {
+        process_dir_with_timeout(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_script_split() throws IOException {
+        process_script_split(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_buffer_twice() {
+        process_buffer_twice(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_with_extractors() throws IOException {
+        process_with_extractors(RunType.FormatJS);
+    }
+
+    @Test
+    public void process_dir_with_ignore_file() throws IOException {
+        process_dir_with_ignore_file(RunType.FormatJS);
+    }
+
 }
@@ -20,13 +20,29 @@ public class FormatWrongArgumentTest extends AbstractSqlclTest {
             
             options:
               --register, -r  register SQLcl command tvdformat, without processing, no <rootPath> required
+              --check         report files requiring formatting without changing them
+                              terminates SQLcl with exit status 1 if at least one file requires formatting
               ext=<ext>       comma separated list of file extensions to process, e.g. ext=sql,pks,pkb
               mext=<ext>      comma separated list of markdown file extensions to process, e.g. ext=md,mdown
+              extract=<list>  comma separated list of extractors for SQL code in other files, e.g. extract=liquibase,flyway
+                              liquibase (xml changelogs), flyway (java migrations), apex (application exports)
               xml=<file>      path to the file containing the xml file for advanced format settings
                               xml=default uses default advanced settings included in sqlcl
                               xml=embedded uses advanced settings defined in format.js
               arbori=<file>   path to the file containing the Arbori program for custom format settings
                               arbori=default uses default Arbori program included in sqlcl
+              threads=<n>     number of files to format in parallel, default is 1
+                              the largest files are formatted first
+              timeout=<s>     time budget per file in seconds, files exceeding it are skipped
+              split=<lines>   format scripts in pieces of at least <lines> lines in parallel
+                              pieces are split at top-level statements, the result is the same as without split
+              cache=<file>    path to the file to store hashes of formatted files and syntax errors
+                              unchanged files are skipped in subsequent runs with the same settings
+              changed=<ref>   process only files changed since git ref and untracked files, e.g. changed=origin/main
+              profile=<file>  path to the file to store time, cardinality and allocated bytes per Arbori rule and file
+                              written as JSON if the file name ends with .json, otherwise as CSV
+              encoding=<name> character encoding of the files to format, default is UTF-8
+                              a byte order mark and CRLF line endings are preserved
 
             """;
         final String actual = runScript();
@@ -45,4 +61,52 @@ public class FormatWrongArgumentTest extends AbstractSqlclTest {
         Assert.assertTrue(actual.contains("invalid argument xyz=10."));
     }
 
+    @Test
+    public void wrong_threads() {
+        final String actual = this.runScript(this.tempDir.toString(), "threads=0");
+        Assert.assertTrue(actual.contains("invalid number of threads 0."));
+    }
+
+    @Test
+    public void wrong_timeout() {
+        final String actual = this.runScript(this.tempDir.toString(), "timeout=-1");
+        Assert.assertTrue(actual.contains("invalid timeout -1."));
+    }
+
+    @Test
+    public void wrong_split() {
+        final String actual = this.runScript(this.tempDir.toString(), "split=0");
+        Assert.assertTrue(actual.contains("invalid split size 0."));
+    }
+
+    @Test
+    public void wrong_extractor() {
+        final String actual = this.runScript(this.tempDir.toString(), "extract=liquibase,dbt");
+        Assert.assertTrue(actual.contains("unknown extractor dbt."));
+    }
+
+    @Test
+    public void wrong_changed() {
+        final String actual = this.runScript(this.tempDir.toString(), "changed=");
+        Assert.assertTrue(actual.contains("invalid git ref ."));
+    }
+
+    @Test
+    public void wrong_profile() {
+        final String actual = this.runScript(this.tempDir.toString(), "profile=profile.csv", "threads=2");
+        Assert.assertTrue(actual.contains("option profile cannot be combined with *, threads, timeout, split or cache."));
+    }
+
+    @Test
+    public void wrong_profile_default_arbori() {
+        final String actual = this.runScript(this.tempDir.toString(), "profile=profile.csv", "arbori=default");
+        Assert.assertTrue(actual.contains("option profile requires an Arbori program file."));
+    }
+
+    @Test
+    public void wrong_encoding() {
+        final String actual = this.runScript(this.tempDir.toString(), "encoding=utf-42");
+        Assert.assertTrue(actual.contains("unsupported encoding utf-42."));
+    }
+
 }
@@ -7,6 +7,8 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+
 import java.util.List;
 
 public class TvdFormatTest extends AbstractFormatTest {
@@ -48,6 +50,16 @@ public class TvdFormatTest extends AbstractFormatTest {
         process_dir(RunType.TvdFormatCommand);
     }
 
+    @Test
+    public void process_dir_in_parallel() {
+        process_dir_in_parallel(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_dir_with_cache() throws IOException {
+        process_dir_with_cache(RunType.TvdFormatCommand);
+    }
+
     @Test
     public void process_pkb_only() {
         process_pkb_only(RunType.TvdFormatCommand);
@@ -83,4 +95,59 @@ public class TvdFormatTest extends AbstractFormatTest {
         process_markdown_only(RunType.TvdFormatCommand);
     }
 
+    @Test
+    public void process_markdown_only_in_parallel() {
+        process_markdown_only_in_parallel(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_with_bom_and_crlf() throws IOException {
+        process_with_bom_and_crlf(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_with_encoding() throws IOException {
+        process_with_encoding(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_dir_check() {
+        process_dir_check(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_dir_twice() throws IOException {
+        process_dir_twice(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_changed_only() throws IOException, InterruptedException {
+        process_changed_only(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_dir_with_timeout() {
+        process_dir_with_timeout(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_script_split() throws IOException {
+        process_script_split(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_buffer_twice() {
+        process_buffer_twice(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_with_extractors() throws IOException {
+        process_with_extractors(RunType.TvdFormatCommand);
+    }
+
+    @Test
+    public void process_dir_with_ignore_file() throws IOException {
+        process_dir_with_ignore_file(RunType.TvdFormatCommand);
+    }
+
 }
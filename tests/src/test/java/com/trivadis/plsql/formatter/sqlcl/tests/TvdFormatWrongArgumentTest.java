@@ -26,13 +26,28 @@ public class TvdFormatWrongArgumentTest extends AbstractSqlclTest {
                               use * to format the SQLcl buffer
             
             options:
+              --check         report files requiring formatting without changing them
               ext=<ext>       comma separated list of file extensions to process, e.g. ext=sql,pks,pkb
               mext=<ext>      comma separated list of markdown file extensions to process, e.g. ext=md,mdown
+              extract=<list>  comma separated list of extractors for SQL code in other files, e.g. extract=liquibase,flyway
+                              liquibase (xml changelogs), flyway (java migrations), apex (application exports)
               xml=<file>      path to the file containing the xml file for advanced format settings
                               xml=default uses default advanced settings included in sqlcl
                               xml=embedded uses advanced settings defined in format.js
               arbori=<file>   path to the file containing the Arbori program for custom format settings
                               arbori=default uses default Arbori program included in sqlcl
+              threads=<n>     number of files to format in parallel, default is 1
+                              the largest files are formatted first
+              timeout=<s>     time budget per file in seconds, files exceeding it are skipped
+              split=<lines>   format scripts in pieces of at least <lines> lines in parallel
+                              pieces are split at top-level statements, the result is the same as without split
+              cache=<file>    path to the file to store hashes of formatted files and syntax errors
+                              unchanged files are skipped in subsequent runs with the same settings
+              changed=<ref>   process only files changed since git ref and untracked files, e.g. changed=origin/main
+              profile=<file>  path to the file to store time, cardinality and allocated bytes per Arbori rule and file
+                              written as JSON if the file name ends with .json, otherwise as CSV
+              encoding=<name> character encoding of the files to format, default is UTF-8
+                              a byte order mark and CRLF line endings are preserved
             
             """;
         final String actual = runCommand("Tvdformat");
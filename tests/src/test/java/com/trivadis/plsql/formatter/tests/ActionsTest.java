@@ -0,0 +1,80 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.arbori.Actions;
+import oracle.dbtools.parser.LexerToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+public class ActionsTest {
+
+    @Test
+    public void sizes() {
+        final int[] sizes = Actions.sizes(LexerToken.parse("select a from dual"));
+        Assert.assertArrayEquals(new int[]{0, 7, 9, 14, 19}, sizes);
+    }
+
+    @Test
+    public void padding() {
+        Assert.assertEquals("", Actions.padding(-1));
+        Assert.assertEquals("   ", Actions.padding(3));
+        Assert.assertSame(Actions.padding(3), Actions.padding(3));
+        Assert.assertEquals(300, Actions.padding(300).length());
+    }
+
+    @Test
+    public void indent() {
+        Assert.assertEquals("\n   ", Actions.indent("\n   ", 0));
+        Assert.assertEquals("\n     ", Actions.indent("\n   ", 2));
+        Assert.assertSame(Actions.indent("\n   ", 2), Actions.indent("\n   ", 2));
+        Assert.assertEquals("\n" + " ".repeat(300), Actions.indent("\n", 300));
+    }
+
+    @Test
+    public void normalize_empty_lines() {
+        final String input = "select 1 from dual;\n\n\n\nselect 2 from dual;\n";
+        final String actual = Actions.normalizeEmptyLines(Actions.tokenStream(input), Set.of());
+        Assert.assertEquals("select 1 from dual;\n\nselect 2 from dual;\n", actual);
+    }
+
+    @Test
+    public void normalize_empty_lines_unchanged() {
+        final String input = "select 1 from dual;\n\nselect 2 from dual;\n";
+        Assert.assertNull(Actions.normalizeEmptyLines(Actions.tokenStream(input), Set.of()));
+    }
+
+    @Test
+    public void normalize_empty_lines_off_on() {
+        final String input = "-- @formatter:off\nselect 1 from dual;\n\n\n\n-- @formatter:on\nselect 2 from dual;\n";
+        Assert.assertNull(Actions.normalizeEmptyLines(Actions.tokenStream(input), Set.of()));
+    }
+
+    @Test
+    public void normalize_empty_lines_missing_line_breaks_off_on() {
+        // parse tree positions of the second select of each line, the off/on range starts at character 43
+        final String input = "select 1 from dual; select 2 from dual;\n\n\n\n-- @formatter:off\n"
+                + "select 3 from dual; select 4 from dual;\n-- @formatter:on\nselect 5 from dual; select 6 from dual;\n";
+        final String actual = Actions.normalizeEmptyLines(Actions.tokenStream(input), Set.of(5, 15, 25));
+        Assert.assertEquals("select 1 from dual; \nselect 2 from dual;\n\n-- @formatter:off\n"
+                + "select 3 from dual; select 4 from dual;\n-- @formatter:on\nselect 5 from dual; \nselect 6 from dual;\n", actual);
+    }
+
+    @Test
+    public void unformatted_positions() {
+        final String input = "select 1 from dual;\n-- @formatter:off\nselect 2 from dual;\n-- @formatter:on\nselect 3 from dual;\n";
+        Assert.assertArrayEquals(new int[]{5, 6, 7, 8, 9}, Actions.unformattedPositions(Actions.tokenStream(input)));
+    }
+
+    @Test
+    public void select_hint_positions() {
+        final String input = "select /*+ full(t) */ /*+ second */ a from t;\nselect /* no hint */ b from t;\n";
+        Assert.assertArrayEquals(new int[]{1}, Actions.selectHintPositions(Actions.tokenStream(input)));
+    }
+
+    @Test
+    public void first_selection_directive_positions() {
+        final String input = "begin\n$if a $then\nx;\n$else\ny;\n$end\nend;\n";
+        Assert.assertArrayEquals(new int[]{1, 2}, Actions.firstSelectionDirectivePositions(Actions.tokenStream(input)));
+    }
+}
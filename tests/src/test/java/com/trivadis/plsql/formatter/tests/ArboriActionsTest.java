@@ -0,0 +1,114 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.FormatterSettings;
+import com.trivadis.plsql.formatter.arbori.Actions;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The Java implementation of the hot Arbori callbacks must produce the same result as the JavaScript
+ * implementation used by SQL Developer and format.js.
+ */
+public class ArboriActionsTest {
+    private FormatterSettings settings;
+    private String enabled;
+
+    @Before
+    public void setup() throws IOException {
+        settings = FormatterSettings.of(
+                Paths.get(Thread.currentThread().getContextClassLoader().getResource("trivadis_advanced_format.xml").getPath()),
+                Paths.get(Thread.currentThread().getContextClassLoader().getResource("trivadis_custom_format.arbori").getPath()));
+        enabled = System.getProperty(Actions.ENABLED_PROPERTY);
+    }
+
+    @After
+    public void teardown() {
+        if (enabled == null) {
+            System.clearProperty(Actions.ENABLED_PROPERTY);
+        } else {
+            System.setProperty(Actions.ENABLED_PROPERTY, enabled);
+        }
+    }
+
+    private String format(String sql, boolean javaActions) throws IOException {
+        System.setProperty(Actions.ENABLED_PROPERTY, Boolean.toString(javaActions));
+        return settings.newFormatter().format(sql);
+    }
+
+    private void assertSameResult(String sql) throws IOException {
+        Assert.assertEquals(format(sql, false), format(sql, true));
+    }
+
+    @Test
+    public void empty_lines_and_off_on() throws IOException {
+        assertSameResult("""
+            select a, b, c from t where d = 1;
+
+
+
+            -- @formatter:off
+            SELECT    *
+               FROM dual; SELECT * FROM dual;
+
+
+            -- @formatter:on
+               \s
+            select a from t; select b from t;
+            """);
+    }
+
+    @Test
+    public void hints_and_selection_directives() throws IOException {
+        assertSameResult("""
+            select /*+ full(t) */ a, b, c from t;
+            select /* no hint */ a from t;
+            begin
+               $if dbms_db_version.version >= 19 $then
+               p(1,
+               2);
+               $else
+               p(3);
+               $end
+            end;
+            /
+            """);
+    }
+
+    @Test
+    public void hint_before_first_token() throws IOException {
+        // no previous token, the test runs with both implementations in every surefire execution
+        assertSameResult("""
+            /*+ full(t) */ select a from t;
+            """);
+        assertSameResult("""
+            -- comment
+            --+ full(t)
+            select --+ full(t)
+            a from t;
+            """);
+    }
+
+    @Test
+    public void long_argument_list() throws IOException {
+        assertSameResult("""
+            begin
+               p(p_1 => 1, p_2 => 2, p_3 => 3, p_4 => 4, p_5 => 5, p_6 => 6, p_7 => 7, p_8 => 8);
+            end;
+            /
+            """);
+    }
+
+    @Test
+    public void package_body() throws IOException {
+        final Path file = Paths.get(Thread.currentThread().getContextClassLoader().getResource("unformatted/package_body.pkb").getPath());
+        assertSameResult(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+}
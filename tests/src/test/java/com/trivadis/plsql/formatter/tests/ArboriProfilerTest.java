@@ -0,0 +1,107 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.ArboriProfiler;
+import com.trivadis.plsql.formatter.RuleProfile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ArboriProfilerTest {
+
+    @Test
+    public void instrument() {
+        final String program =
+            """
+            include "std.arbori"
+
+            -- comment
+            rule1: [node) select ;
+            "quoted rule": runOnce -> { var x = "}"; }
+            rule2: [node) from ->;
+            """;
+        final String actual = ArboriProfiler.instrument(program);
+        Assert.assertTrue(actual.startsWith("include \"std.arbori\"\n\n-- comment\ntvdformat_profile_prelude: runOnce -> {"));
+        Assert.assertTrue(actual.contains(
+            """
+            tvdformat_profile_0_start: runOnce -> { profileEvent("start", "rule1", "tuple"); }
+            rule1: [node) select ;
+            tvdformat_profile_0_end: runOnce -> { profileEvent("end", "rule1"); }
+            tvdformat_profile_0_tuples: rule1 -> { profileEvent("tuple", "rule1"); }
+            tvdformat_profile_1_start: runOnce -> { profileEvent("start", "quoted rule", "callback"); }
+            "quoted rule": runOnce -> { profileEvent("enter", "quoted rule");
+             var x = "}";\s
+              profileEvent("exit", "quoted rule");
+            }
+            tvdformat_profile_1_end: runOnce -> { profileEvent("end", "quoted rule"); }
+            tvdformat_profile_2_start: runOnce -> { profileEvent("start", "rule2", "tuple"); }
+            rule2: [node) from ->;
+            """));
+        Assert.assertFalse(actual.contains("tvdformat_profile_1_tuples"));
+    }
+
+    @Test
+    public void instrument_crlf() {
+        final String actual = ArboriProfiler.instrument("rule1: [node) select ;\r\n");
+        Assert.assertFalse(actual.replace("\r\n", "").contains("\n"));
+    }
+
+    @Test
+    public void instrument_unexpected_syntax() {
+        final IllegalArgumentException e = Assert.assertThrows(IllegalArgumentException.class,
+                () -> ArboriProfiler.instrument("rule1: [node) select ;\nrule2 [node) from;\n"));
+        Assert.assertEquals("unexpected Arbori syntax at line 2.", e.getMessage());
+    }
+
+    @Test
+    public void aggregate() {
+        final List<Object[]> events = List.of(
+                new Object[]{"start", "rule1", 0L, 0L, "tuple"},
+                new Object[]{"end", "rule1", 100L, 1000L, null},
+                new Object[]{"tuple", "rule1", 110L, 1000L, null},
+                new Object[]{"tuple", "rule1", 120L, 1000L, null},
+                new Object[]{"start", "rule2", 200L, 2000L, "callback"},
+                new Object[]{"enter", "rule2", 210L, 2000L, null},
+                new Object[]{"exit", "rule2", 250L, 2500L, null},
+                new Object[]{"enter", "rule2", 260L, 2500L, null},
+                new Object[]{"exit", "rule2", 280L, 2600L, null},
+                new Object[]{"end", "rule2", 300L, 2600L, null},
+                new Object[]{"start", "rule 3", 300L, 2600L, "none"},
+                new Object[]{"end", "rule 3", 301L, 2600L, null});
+        final List<RuleProfile> profiles = ArboriProfiler.aggregate("a.sql", events);
+        Assert.assertEquals(3, profiles.size());
+        final RuleProfile rule1 = profiles.get(0);
+        Assert.assertEquals("rule1", rule1.getRule());
+        Assert.assertEquals(100L, rule1.getEvalNanos());
+        Assert.assertEquals(2L, rule1.getTuples());
+        Assert.assertEquals(0L, rule1.getCallbacks());
+        Assert.assertEquals(1000L, rule1.getAllocatedBytes());
+        final RuleProfile rule2 = profiles.get(1);
+        Assert.assertEquals(40L, rule2.getEvalNanos());
+        Assert.assertEquals(2L, rule2.getTuples());
+        Assert.assertEquals(2L, rule2.getCallbacks());
+        Assert.assertEquals(60L, rule2.getCallbackNanos());
+        Assert.assertEquals(600L, rule2.getAllocatedBytes());
+        Assert.assertEquals(-1L, profiles.get(2).getTuples());
+    }
+
+    @Test
+    public void csv_and_json() {
+        final List<RuleProfile> profiles = List.of(
+                new RuleProfile("a,b.sql", "rule1", 1500000L, 2L, 0L, 0L, 1024L),
+                new RuleProfile("c.sql", "rule 3", 1000L, -1L, 0L, 0L, 0L));
+        Assert.assertEquals(
+            """
+            input,rule,eval_ms,tuples,callbacks,callback_ms,allocated_bytes
+            "a,b.sql",rule1,1.500,2,0,0.000,1024
+            c.sql,rule 3,0.001,,0,0.000,0
+            """, ArboriProfiler.toCsv(profiles));
+        Assert.assertEquals(
+            """
+            [
+              {"input": "a,b.sql", "rule": "rule1", "evalMillis": 1.500, "tuples": 2, "callbacks": 0, "callbackMillis": 0.000, "allocatedBytes": 1024},
+              {"input": "c.sql", "rule": "rule 3", "evalMillis": 0.001, "tuples": null, "callbacks": 0, "callbackMillis": 0.000, "allocatedBytes": 0}
+            ]
+            """, ArboriProfiler.toJson(profiles));
+    }
+}
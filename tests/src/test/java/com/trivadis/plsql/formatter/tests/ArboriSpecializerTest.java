@@ -0,0 +1,123 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.ArboriSpecializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class ArboriSpecializerTest {
+    private static final Map<String, Boolean> BINDS = Map.of("breaksAfterComma", true, "breaksBeforeComma", false);
+
+    private String specialize(String program) {
+        return ArboriSpecializer.specialize(program, name -> null, BINDS::get);
+    }
+
+    @Test
+    public void fold_binds() {
+        final String program =
+            """
+            rule1:
+              [node) select_list & :breaksAfterComma  -- after
+            | :breaksBeforeComma & [node) ','         -- before
+            | [node) from_clause & !:breaksBeforeComma
+            ->;
+            """;
+        final String expected =
+            """
+            rule1:
+              [node) select_list  -- after
+            | [node) from_clause
+            ->;
+            """;
+        Assert.assertEquals(expected, specialize(program));
+    }
+
+    @Test
+    public void keep_unknown_binds_and_javascript_conditions() {
+        final String program = "rule1: :unknown & .breaksProcArgs & [node) ',' & :breaksAfterComma ->;\n";
+        Assert.assertEquals("rule1: :unknown & .breaksProcArgs & [node) ',' ->;\n", specialize(program));
+    }
+
+    @Test
+    public void keep_true_disjunction() {
+        final String program = "rule1: [node) ',' | :breaksAfterComma ->;\n";
+        Assert.assertEquals(program, specialize(program));
+    }
+
+    @Test
+    public void keep_set_difference() {
+        final String program = "rule1: \"ids\" - \"analytics\" & :breaksAfterComma ->;\n";
+        Assert.assertEquals(program, specialize(program));
+    }
+
+    @Test
+    public void remove_dead_rules() {
+        final String program =
+            """
+            false: [];
+            rule1: :breaksBeforeComma & [node) ',';
+            rule2: rule1 | [node) select_list -> { print(tuple); }
+            rule3: rule1 & [node) ',' -> { print(tuple); }
+            timestamp: runOnce & false -> {
+              print("}");
+            }
+            rule4: [node) from_clause ->;
+            """;
+        final String expected =
+            """
+            false: [];
+            rule1: :breaksBeforeComma & [node) ',';
+            rule2: [node) select_list -> { print(tuple); }
+            rule4: [node) from_clause ->;
+            """;
+        Assert.assertEquals(expected, specialize(program));
+    }
+
+    @Test
+    public void keep_referenced_dead_rules() {
+        final String program =
+            """
+            rule1: :breaksBeforeComma & [node) ',' -> { print(tuple); }
+            rule2: (rule1 - rule0) -> { print(tuple); }
+            """;
+        Assert.assertEquals(program, specialize(program));
+    }
+
+    @Test
+    public void inline_includes() {
+        final String actual = ArboriSpecializer.specialize("include \"std.arbori\"\r\nrule1: [node) ',' ->;\r\n",
+                name -> "std.arbori".equals(name) ? "false: [];\r\n" : null, BINDS::get);
+        Assert.assertEquals("false: [];\r\n\r\nrule1: [node) ',' ->;\r\n", actual);
+    }
+
+    @Test
+    public void keep_unknown_includes() {
+        final String program = "include \"std.arbori\"\nrule1: [node) ',' ->;\n";
+        Assert.assertEquals(program, specialize(program));
+    }
+
+    @Test
+    public void options_header() {
+        final String program = ArboriSpecializer.withOptionsHeader("rule1: [node) ',' ->;\r\n", BINDS);
+        Assert.assertEquals(BINDS, ArboriSpecializer.getFoldedOptions(program));
+        Assert.assertTrue(program.endsWith("\r\n\r\nrule1: [node) ',' ->;\r\n"));
+        ArboriSpecializer.checkOptions(program, BINDS::get);
+    }
+
+    @Test
+    public void reject_other_options() {
+        final String program = ArboriSpecializer.withOptionsHeader("rule1: [node) ',' ->;\n", BINDS);
+        final IllegalArgumentException e = Assert.assertThrows(IllegalArgumentException.class,
+                () -> ArboriSpecializer.checkOptions(program, name -> !BINDS.get(name)));
+        Assert.assertEquals("Arbori program specialized for :breaksAfterComma = true, but the option is false.",
+                e.getMessage());
+    }
+
+    @Test
+    public void accept_any_options_without_header() {
+        final String program = "rule1: [node) ',' ->;\n";
+        Assert.assertNull(ArboriSpecializer.getFoldedOptions(program));
+        ArboriSpecializer.checkOptions(program, name -> null);
+    }
+}
@@ -0,0 +1,181 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.BatchFormatter;
+import com.trivadis.plsql.formatter.FormatResult;
+import com.trivadis.plsql.formatter.FormatterSettings;
+import com.trivadis.plsql.formatter.SqlExtractor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class BatchFormatterTest {
+    private FormatterSettings settings;
+    private Path tempDir;
+
+    @Before
+    public void setup() throws IOException {
+        settings = FormatterSettings.of(
+                Paths.get(Thread.currentThread().getContextClassLoader().getResource("trivadis_advanced_format.xml").getPath()),
+                Paths.get(Thread.currentThread().getContextClassLoader().getResource("trivadis_custom_format.arbori").getPath()));
+        tempDir = Files.createTempDirectory("plsql-formatter-test-");
+        final Path unformattedDir = Paths.get(Thread.currentThread().getContextClassLoader().getResource("unformatted").getPath());
+        final List<Path> sources = Files.walk(unformattedDir).filter(f -> Files.isRegularFile(f))
+                .collect(Collectors.toList());
+        for (Path source : sources) {
+            Files.copy(source, Paths.get(tempDir.toString() + File.separator + source.getFileName()));
+        }
+    }
+
+    @Test
+    public void format_string() throws IOException {
+        final String expected =
+            """
+            select *
+              from dual;
+            """.trim();
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings)) {
+            final FormatResult result = batchFormatter.format("SELECT * FROM dual;");
+            Assert.assertEquals(FormatResult.Status.FORMATTED, result.getStatus());
+            Assert.assertEquals(expected, result.getContent());
+            Assert.assertNull(result.getSyntaxErrorMessage());
+            Assert.assertTrue(result.isChanged());
+        }
+    }
+
+    @Test
+    public void format_string_with_syntax_error() throws IOException {
+        final String original = "SELECT * FROM;";
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings)) {
+            final FormatResult result = batchFormatter.format(original);
+            Assert.assertEquals(FormatResult.Status.SYNTAX_ERROR, result.getStatus());
+            Assert.assertEquals(original, result.getContent());
+            Assert.assertTrue(result.getSyntaxErrorMessage().startsWith("Syntax Error at line 2"));
+        }
+    }
+
+    @Test
+    public void format_string_same_as_format() throws IOException {
+        final List<String> inputs = List.of(
+                "\n\nSELECT * FROM dual;",
+                "\n-- comment\nSELECT * FROM dual;",
+                "/* comment */\n\n\nSELECT * FROM dual;",
+                "\n\n\n-- comment\n\nSELECT * FROM dual;\n\n");
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings)) {
+            for (String input : inputs) {
+                Assert.assertEquals(settings.newFormatter().format(input),
+                        batchFormatter.format(input).getContent());
+            }
+        }
+    }
+
+    @Test
+    public void format_file_with_bom_and_crlf() throws IOException {
+        final Path file = Paths.get(tempDir.toString() + File.separator + "crlf.sql");
+        Files.write(file, "\uFEFFSELECT * FROM dual;\r\n".getBytes(StandardCharsets.UTF_8));
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings)) {
+            final FormatResult result = batchFormatter.format(file);
+            Assert.assertEquals(FormatResult.Status.FORMATTED, result.getStatus());
+            Assert.assertEquals("select *\n  from dual;", result.getContent());
+            Assert.assertEquals("\uFEFFselect *\r\n  from dual;", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void format_file_with_encoding() throws IOException {
+        final Path file = Paths.get(tempDir.toString() + File.separator + "latin1.sql");
+        Files.write(file, "SELECT '\u00e4' FROM dual;".getBytes(StandardCharsets.ISO_8859_1));
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings)) {
+            Assert.assertThrows(CharacterCodingException.class, () -> batchFormatter.format(file));
+        }
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings, 1,
+                BatchFormatter.DEFAULT_MARKDOWN_EXTENSIONS, StandardCharsets.ISO_8859_1)) {
+            batchFormatter.format(file);
+            Assert.assertEquals("select '\u00e4'\n  from dual;", new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    public void format_liquibase_changelog() throws IOException {
+        final Path file = Paths.get(tempDir.toString() + File.separator + "changelog.xml");
+        Files.writeString(file,
+            """
+            <databaseChangeLog>
+                <changeSet id="1" author="test">
+                    <sql>
+                        SELECT * FROM dual;
+                    </sql>
+                </changeSet>
+            </databaseChangeLog>
+            """);
+        final String expected =
+            """
+            <databaseChangeLog>
+                <changeSet id="1" author="test">
+                    <sql>
+                        select *
+                          from dual;
+                    </sql>
+                </changeSet>
+            </databaseChangeLog>
+            """;
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings, 2, StandardCharsets.UTF_8,
+                List.of(SqlExtractor.load("markdown"), SqlExtractor.load("liquibase")))) {
+            final FormatResult result = batchFormatter.format(file);
+            Assert.assertEquals(FormatResult.Status.FORMATTED, result.getStatus());
+            Assert.assertTrue(result.isChanged());
+            Assert.assertEquals(expected, Files.readString(file));
+        }
+    }
+
+    @Test
+    public void format_duplicate_files_once() throws IOException {
+        final Path file = tempDir.resolve("query.sql");
+        final Path sameFile = tempDir.resolve("..").resolve(tempDir.getFileName()).resolve("query.sql");
+        final Path other = tempDir.resolve("package_body.pkb");
+        try (BatchFormatter batchFormatter = new BatchFormatter(settings, 4)) {
+            final List<FormatResult> results = batchFormatter.format(List.of(file, other, sameFile));
+            Assert.assertEquals(3, results.size());
+            Assert.assertEquals(file, results.get(0).getFile());
+            Assert.assertEquals(other, results.get(1).getFile());
+            Assert.assertSame(results.get(0), results.get(2));
+        }
+    }
+
+    @Test
+    public void format_files_in_parallel() throws IOException {
+        final List<Path> files = Files.list(tempDir).sorted().collect(Collectors.toList());
+        try (BatchFormatter sequential = new BatchFormatter(settings);
+             BatchFormatter parallel = new BatchFormatter(settings, 4)) {
+            final List<String> expected = files.stream().map(f -> {
+                try {
+                    return sequential.format(new String(Files.readAllBytes(f))).getContent();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }).collect(Collectors.toList());
+            final List<FormatResult> results = parallel.format(files);
+            Assert.assertEquals(files.size(), results.size());
+            for (int i = 0; i < files.size(); i++) {
+                final FormatResult result = results.get(i);
+                Assert.assertEquals(files.get(i), result.getFile());
+                Assert.assertEquals(result.getContent(), new String(Files.readAllBytes(files.get(i))));
+                if (!parallel.isMarkdownFile(files.get(i))) {
+                    Assert.assertEquals(expected.get(i), result.getContent());
+                }
+            }
+            Assert.assertEquals(FormatResult.Status.SYNTAX_ERROR, results.stream()
+                    .filter(r -> r.getFile().getFileName().toString().equals("syntax_error.sql"))
+                    .findFirst().get().getStatus());
+        }
+    }
+}
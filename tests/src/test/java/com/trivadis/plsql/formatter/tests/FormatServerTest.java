@@ -0,0 +1,121 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.FormatClient;
+import com.trivadis.plsql.formatter.FormatResult;
+import com.trivadis.plsql.formatter.FormatServer;
+import com.trivadis.plsql.formatter.FormatterSettings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+public class FormatServerTest {
+    private FormatServer server;
+
+    @Before
+    public void setup() throws IOException, InterruptedException {
+        final FormatterSettings settings = FormatterSettings.of(
+                Paths.get(Thread.currentThread().getContextClassLoader().getResource("trivadis_advanced_format.xml").getPath()),
+                Paths.get(Thread.currentThread().getContextClassLoader().getResource("trivadis_custom_format.arbori").getPath()));
+        server = new FormatServer(settings, 0, 2).start();
+    }
+
+    @After
+    public void teardown() {
+        server.close();
+    }
+
+    @Test
+    public void ping() throws IOException {
+        try (FormatClient client = new FormatClient(server.getPort())) {
+            Assert.assertTrue(client.ping());
+        }
+    }
+
+    @Test
+    public void format_multiple_requests() throws IOException {
+        final String expected =
+            """
+            select *
+              from dual;
+            """.trim();
+        try (FormatClient client = new FormatClient(server.getPort())) {
+            for (int i = 0; i < 3; i++) {
+                final FormatResult result = client.format("SELECT * FROM dual;");
+                Assert.assertEquals(FormatResult.Status.FORMATTED, result.getStatus());
+                Assert.assertEquals(expected, result.getContent());
+            }
+        }
+    }
+
+    @Test
+    public void format_concurrent_clients() throws IOException {
+        try (FormatClient client1 = new FormatClient(server.getPort());
+             FormatClient client2 = new FormatClient(server.getPort())) {
+            final String result1 = client1.format("SELECT * FROM dual;").getContent();
+            final String result2 = client2.format("SELECT * FROM dual;").getContent();
+            Assert.assertEquals(result1, result2);
+        }
+    }
+
+    @Test
+    public void reject_connections_beyond_threads() throws IOException {
+        try (FormatClient client1 = new FormatClient(server.getPort());
+             FormatClient client2 = new FormatClient(server.getPort());
+             FormatClient client3 = new FormatClient(server.getPort())) {
+            Assert.assertTrue(client1.ping());
+            Assert.assertTrue(client2.ping());
+            final IOException e = Assert.assertThrows(IOException.class, client3::ping);
+            Assert.assertEquals("server busy, all 2 connections in use.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void syntax_error() throws IOException {
+        final String original = "SELECT * FROM;";
+        try (FormatClient client = new FormatClient(server.getPort())) {
+            final FormatResult result = client.format(original);
+            Assert.assertEquals(FormatResult.Status.SYNTAX_ERROR, result.getStatus());
+            Assert.assertEquals(original, result.getContent());
+            Assert.assertTrue(result.getSyntaxErrorMessage().startsWith("Syntax Error at line 2"));
+        }
+    }
+
+    @Test
+    public void shutdown() throws IOException, InterruptedException {
+        try (FormatClient client = new FormatClient(server.getPort())) {
+            client.shutdown(server.getShutdownToken());
+        }
+        server.awaitTermination();
+    }
+
+    @Test
+    public void shutdown_with_invalid_token() throws IOException {
+        try (FormatClient client = new FormatClient(server.getPort())) {
+            final IOException e = Assert.assertThrows(IOException.class, () -> client.shutdown("invalid"));
+            Assert.assertEquals("invalid shutdown token.", e.getMessage());
+            Assert.assertTrue(client.ping());
+        }
+    }
+
+    @Test
+    public void reject_content_length_overflow() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final OutputStream out = socket.getOutputStream();
+            out.write("FORMAT 99999999999999999999\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            // connection is closed without response
+            Assert.assertEquals(-1, socket.getInputStream().read());
+        }
+        try (FormatClient client = new FormatClient(server.getPort())) {
+            Assert.assertTrue(client.ping());
+        }
+    }
+}
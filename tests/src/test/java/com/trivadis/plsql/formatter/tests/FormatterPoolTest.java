@@ -0,0 +1,75 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.FormatterPool;
+import com.trivadis.plsql.formatter.FormatterSettings;
+import oracle.dbtools.app.Format;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class FormatterPoolTest {
+
+    @Before
+    public void setup() {
+        FormatterPool.clear();
+    }
+
+    @After
+    public void teardown() {
+        FormatterPool.clear();
+    }
+
+    private FormatterSettings settings(int i) {
+        return new FormatterSettings(Map.of("tvdformat.test.key", i), FormatterSettings.DEFAULT);
+    }
+
+    private Set<Format> release(FormatterSettings settings, int count) {
+        final Set<Format> released = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < count; i++) {
+            released.add(settings.newFormatter());
+        }
+        for (Format formatter : released) {
+            FormatterPool.release(settings, formatter);
+        }
+        return released;
+    }
+
+    private int countIdle(FormatterSettings settings, Set<Format> released) {
+        int count = 0;
+        while (released.contains(FormatterPool.acquire(settings))) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void limit_idle_formatters_per_key() {
+        final FormatterSettings settings = settings(0);
+        final Set<Format> released = release(settings, FormatterPool.MAX_IDLE_PER_KEY + 1);
+        Assert.assertEquals(FormatterPool.MAX_IDLE_PER_KEY, countIdle(settings, released));
+    }
+
+    @Test
+    public void limit_idle_formatters_in_total() {
+        final int keys = FormatterPool.MAX_IDLE / FormatterPool.MAX_IDLE_PER_KEY + 1;
+        final List<Set<Format>> released = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            released.add(release(settings(i), FormatterPool.MAX_IDLE_PER_KEY));
+        }
+        // formatters of other settings are discarded in favour of the most recently released ones
+        Assert.assertEquals(FormatterPool.MAX_IDLE_PER_KEY, countIdle(settings(keys - 1), released.get(keys - 1)));
+        int total = 0;
+        for (int i = 0; i < keys - 1; i++) {
+            total += countIdle(settings(i), released.get(i));
+        }
+        Assert.assertEquals(FormatterPool.MAX_IDLE - FormatterPool.MAX_IDLE_PER_KEY, total);
+    }
+}
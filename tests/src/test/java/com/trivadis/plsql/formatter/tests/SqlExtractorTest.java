@@ -0,0 +1,130 @@
+package com.trivadis.plsql.formatter.tests;
+
+import com.trivadis.plsql.formatter.SqlExtractor;
+import com.trivadis.plsql.formatter.SqlRegion;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+public class SqlExtractorTest {
+
+    @Test
+    public void load() {
+        Assert.assertEquals("markdown", SqlExtractor.load("markdown").getName());
+        Assert.assertEquals("liquibase", SqlExtractor.load("Liquibase").getName());
+        Assert.assertEquals("flyway", SqlExtractor.load("flyway").getName());
+        Assert.assertEquals("apex", SqlExtractor.load("apex").getName());
+        Assert.assertThrows(IllegalArgumentException.class, () -> SqlExtractor.load("unknown"));
+    }
+
+    @Test
+    public void markdown() {
+        final String content =
+            """
+            # Title
+
+            ```sql
+            SELECT * FROM dual;
+            ```
+
+            ```
+            not sql
+            ```
+            """;
+        final SqlExtractor extractor = SqlExtractor.load("markdown");
+        Assert.assertTrue(extractor.accepts(Paths.get("README.md"), content));
+        final List<SqlRegion> regions = extractor.extract(content);
+        Assert.assertEquals(1, regions.size());
+        Assert.assertEquals("SELECT * FROM dual;", regions.get(0).getSql());
+        Assert.assertEquals("SELECT * FROM dual;", content.substring(regions.get(0).getStart(), regions.get(0).getEnd()));
+    }
+
+    @Test
+    public void liquibase() {
+        final String content =
+            """
+            <databaseChangeLog>
+                <changeSet id="1" author="test">
+                    <sql>
+                        SELECT *
+                          FROM dual;
+                    </sql>
+                    <sql><![CDATA[SELECT 1 FROM dual WHERE 1 < 2;]]></sql>
+                    <sql>SELECT 1 FROM dual WHERE 1 &lt; 2;</sql>
+                    <sql/>
+                    <createView viewName="v">SELECT * FROM dual</createView>
+                </changeSet>
+            </databaseChangeLog>
+            """;
+        final SqlExtractor extractor = SqlExtractor.load("liquibase");
+        Assert.assertTrue(extractor.accepts(Paths.get("changelog.xml"), content));
+        Assert.assertFalse(extractor.accepts(Paths.get("pom.xml"), "<project/>"));
+        final List<SqlRegion> regions = extractor.extract(content);
+        Assert.assertEquals(3, regions.size());
+        Assert.assertEquals("SELECT *\n  FROM dual;", regions.get(0).getSql());
+        Assert.assertEquals("select *\n              from dual;", regions.get(0).encode("select *\n  from dual;"));
+        Assert.assertEquals("SELECT 1 FROM dual WHERE 1 < 2;", regions.get(1).getSql());
+        Assert.assertEquals("SELECT * FROM dual", regions.get(2).getSql());
+    }
+
+    @Test
+    public void flyway() {
+        final String content =
+            """
+            import org.flywaydb.core.api.migration.BaseJavaMigration;
+
+            public class V1__Create_view extends BaseJavaMigration {
+                private static final String SQL = \"""
+                    CREATE VIEW v AS
+                    SELECT * FROM dual
+                    \""";
+                private static final String ESCAPED = \"""
+                    SELECT '\\t' FROM dual
+                    \""";
+            }
+            """;
+        final SqlExtractor extractor = SqlExtractor.load("flyway");
+        Assert.assertTrue(extractor.accepts(Paths.get("V1__Create_view.java"), content));
+        final List<SqlRegion> regions = extractor.extract(content);
+        Assert.assertEquals(1, regions.size());
+        Assert.assertEquals("CREATE VIEW v AS\nSELECT * FROM dual", regions.get(0).getSql());
+        Assert.assertEquals("create view v as\n        select *", regions.get(0).encode("create view v as\nselect *"));
+    }
+
+    @Test
+    public void apex() {
+        final String content =
+            """
+            wwv_flow_imp.import_begin (
+             p_version_yyyy_mm_dd=>'2022.10.07'
+            );
+            wwv_flow_imp_page.create_page_plug(
+             p_id=>wwv_flow_imp.id(1)
+            ,p_plug_source=>wwv_flow_string.join(wwv_flow_t_varchar2(
+            'SELECT ename',
+            '  FROM emp WHERE job = ''CLERK'''))
+            ,p_plug_source_type=>'NATIVE_SQL_REPORT'
+            );
+            wwv_flow_imp_page.create_page_process(
+             p_id=>wwv_flow_imp.id(2)
+            ,p_process_sql_clob=>'BEGIN NULL; END;'
+            );
+            wwv_flow_imp_page.create_page_process(
+             p_id=>wwv_flow_imp.id(3)
+            ,p_process_sql_clob=>'BEGIN '||chr(10)||'NULL; END;'
+            );
+            """;
+        final SqlExtractor extractor = SqlExtractor.load("apex");
+        Assert.assertTrue(extractor.accepts(Paths.get("f100.sql"), content));
+        Assert.assertFalse(extractor.accepts(Paths.get("query.sql"), "SELECT * FROM dual;"));
+        final List<SqlRegion> regions = extractor.extract(content);
+        Assert.assertEquals(2, regions.size());
+        Assert.assertEquals("SELECT ename\n  FROM emp WHERE job = 'CLERK'", regions.get(0).getSql());
+        Assert.assertEquals("'select ename',\n'  from emp',\n' where job = ''CLERK'''",
+                regions.get(0).encode("select ename\n  from emp\n where job = 'CLERK'"));
+        Assert.assertEquals("BEGIN NULL; END;", regions.get(1).getSql());
+        Assert.assertEquals("'begin\n   null;\nend;'", regions.get(1).encode("begin\n   null;\nend;"));
+    }
+}
@@ -0,0 +1,40 @@
+set serveroutput on
+set define off
+prompt creating table
+
+CREATE TABLE dept (deptno NUMBER(2) CONSTRAINT pk_dept PRIMARY KEY, dname VARCHAR2(14), loc VARCHAR2(13));
+INSERT INTO dept VALUES (10,'ACCOUNTING','NEW YORK');
+INSERT INTO dept VALUES (20,'RESEARCH','DALLAS');
+
+INSERT INTO dept VALUES (30,q'[SALES; MARKETING]','CHICAGO');
+-- comment between statements
+INSERT INTO dept VALUES (40,'OPERATIONS','BOSTON');
+COMMIT;
+
+prompt creating package
+CREATE OR REPLACE PACKAGE dept_api IS
+PROCEDURE ins(in_deptno IN NUMBER, in_dname IN VARCHAR2);
+END dept_api;
+/
+CREATE OR REPLACE PACKAGE BODY dept_api IS
+PROCEDURE ins(in_deptno IN NUMBER, in_dname IN VARCHAR2) IS
+BEGIN
+INSERT INTO dept(deptno,dname) VALUES (in_deptno,in_dname);
+END ins;
+END dept_api;
+/
+
+BEGIN
+dept_api.ins(50,'IT');
+COMMIT;
+END;
+/
+SELECT deptno,dname FROM dept WHERE deptno>10 ORDER BY deptno
+/
+-- @formatter:off
+SELECT *   FROM dept;
+SELECT d.* FROM dept d;
+-- @formatter:on
+SELECT COUNT(*) FROM dept WHERE dname LIKE '%;%';
+UPDATE dept SET loc='NEW YORK' WHERE deptno=10; DELETE FROM dept WHERE deptno=50;
+exec dbms_output.put_line('done')